@@ -0,0 +1,37 @@
+/**
+ * This class represents a node for an AVL tree. On top of the value and the
+ * parent/children references of a BinaryNode, it caches the height of its
+ * subtree, so balance factors can be computed without walking the tree.
+ */
+public class AVLNode<T> extends BinaryNode<T> {
+
+    // the number of levels of the subtree rooted at this node, 1 for a leaf
+    protected int height = 1;
+
+    /**
+     * Constructor that creates a new leaf node with the value data.
+     * @param data the value the new node stores
+     */
+    public AVLNode(T data) { super(data); }
+
+    /**
+     * @return the number of levels of the subtree rooted at this node
+     */
+    public int getHeight() { return this.height; }
+
+    /**
+     * Changes the cached height of this node's subtree.
+     * @param newHeight the new height
+     */
+    public void setHeight(int newHeight) { this.height = newHeight; }
+
+    /**
+     * Recomputes the cached height from the cached heights of the children.
+     */
+    public void updateHeight() {
+        int leftHeight = this.left == null ? 0 : ((AVLNode<T>) this.left).height;
+        int rightHeight = this.right == null ? 0 : ((AVLNode<T>) this.right).height;
+        this.height = 1 + Math.max(leftHeight, rightHeight);
+    }
+
+}
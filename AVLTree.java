@@ -0,0 +1,305 @@
+import java.util.ArrayList;
+import java.util.BitSet;
+
+/**
+ * A self-balancing BSTRotation that keeps, for every node, the heights of its
+ * two subtrees within one level of each other. Every node caches its height,
+ * which rotate and the walk back up after an insert or remove keep up to date,
+ * and a node that falls out of balance is fixed with a single or a double
+ * rotation. The tree is at most about 1.44 * log2(n) levels high, lower than
+ * the 2 * log2(n) bound of a red-black tree, which makes lookups cheaper at
+ * the price of a few more rotations on updates.
+ */
+public class AVLTree<T extends Comparable<T>> extends BSTRotation<T> {
+    public AVLTree() {
+        super();
+    }
+
+    //Creates an empty AVLTree, in multiset mode when multiset is true
+    public AVLTree(boolean multiset) {
+        super(multiset);
+    }
+
+    @Override
+    //Inserts like BinarySearchTree, and then retraces the path up from the new node
+    public void insert(T data) throws NullPointerException {
+        if(data == null) {
+            throw new NullPointerException();
+        }
+
+        //Counting one more occurrence in an existing node changes no heights
+        if(addOccurrence(data) != null) {
+            return;
+        }
+
+        BinaryNode<T> newNode = createNode(data);
+
+        if(this.isEmpty()) {
+            root = newNode;
+        } else {
+            insertHelper(newNode, root);
+        }
+
+        if(metrics != null) {
+            metrics.recordInsert(depthOf(newNode));
+        }
+
+        retrace(newNode.getParent());
+    }
+
+    @Override
+    protected BinaryNode<T> createNode(T data) {
+        return new AVLNode<>(data);
+    }
+
+    /**
+     * Performs the rotation like BSTRotation does, and then recomputes the
+     * cached heights of the two rotated nodes. Only their subtrees changed,
+     * and parent is now below child, so it is updated first.
+     */
+    @Override
+    protected void rotate(BinaryNode<T> child, BinaryNode<T> parent) throws NullPointerException, IllegalArgumentException {
+        super.rotate(child, parent);
+
+        ((AVLNode<T>) parent).updateHeight();
+        ((AVLNode<T>) child).updateHeight();
+    }
+
+    /**
+     * Splices the node out like BinarySearchTree does, and then retraces the
+     * path up from the position that lost a node.
+     * @param node a node of this tree
+     */
+    @Override
+    protected void removeNode(BinaryNode<T> node) {
+        //The successor takes node's place, so it takes node's old height too; retrace compares against it to know when to stop
+        if(node.getLeft() != null && node.getRight() != null) {
+            ((AVLNode<T>) leftmost(node.getRight())).setHeight(heightOf(node));
+        }
+
+        retrace(spliceNode(node));
+    }
+
+    /**
+     * Walks up from node to the root, recomputing cached heights and
+     * rebalancing every node whose subtrees differ in height by more than one.
+     * Stops as soon as a subtree ends up as high as it was before, since
+     * nothing above it can have changed.
+     * @param node the lowest node whose subtree changed, or null
+     */
+    protected void retrace(BinaryNode<T> node) {
+        while(node != null) {
+            int oldHeight = heightOf(node);
+            BinaryNode<T> subtreeRoot = rebalanceNode(node);
+
+            if(heightOf(subtreeRoot) == oldHeight) {
+                return;
+            }
+
+            node = subtreeRoot.getParent();
+        }
+    }
+
+    //Updates the height of node, rotates it back into balance if needed, and returns the node now at its position
+    protected BinaryNode<T> rebalanceNode(BinaryNode<T> node) {
+        ((AVLNode<T>) node).updateHeight();
+        int balance = balanceOf(node);
+
+        if(balance > 1) {
+            //Left-right case: the left child leans right, so rotate that first to get a left-left case
+            if(balanceOf(node.getLeft()) < 0) {
+                rotate(node.getLeft().getRight(), node.getLeft());
+            }
+
+            BinaryNode<T> left = node.getLeft();
+            rotate(left, node);
+            return left;
+        } else if(balance < -1) {
+            if(balanceOf(node.getRight()) > 0) {
+                rotate(node.getRight().getLeft(), node.getRight());
+            }
+
+            BinaryNode<T> right = node.getRight();
+            rotate(right, node);
+            return right;
+        }
+
+        return node;
+    }
+
+    //Returns the cached height of node, 0 for a missing node
+    protected int heightOf(BinaryNode<T> node) {
+        return node == null ? 0 : ((AVLNode<T>) node).getHeight();
+    }
+
+    //Returns how many levels higher the left subtree of node is than its right subtree
+    protected int balanceOf(BinaryNode<T> node) {
+        return heightOf(node.getLeft()) - heightOf(node.getRight());
+    }
+
+    /**
+     * Replaces the contents of this tree with the provided values in a
+     * perfectly balanced shape, like BinarySearchTree does, and then computes
+     * the cached heights.
+     * @param values the values to load into the tree, duplicates included
+     * @throws NullPointerException if values or any of its elements is null
+     */
+    @Override
+    public void bulkLoad(T[] values) throws NullPointerException {
+        super.bulkLoad(values);
+        recomputeHeights();
+    }
+
+    /**
+     * Grafting whole subtrees would leave nodes out of balance, so the values are inserted one at a time.
+     * @param values the values to insert
+     * @throws NullPointerException if values or any of its elements is null
+     */
+    @Override
+    public void insertAll(T[] values) throws NullPointerException {
+        for(T value : sortedValues(values)) {
+            insert(value);
+        }
+    }
+
+    /**
+     * An arbitrary shape may not be balanced, so the shape is ignored and the
+     * values are bulk loaded.
+     * @param sorted the values of the tree in sorted order
+     * @param shape ignored
+     * @throws NullPointerException if sorted or any of its elements is null
+     */
+    @Override
+    public void restoreShape(T[] sorted, BitSet shape) throws NullPointerException {
+        bulkLoad(sorted);
+    }
+
+    /**
+     * Rebuilds the tree into a perfectly balanced shape like BSTRotation
+     * does, and then recomputes the cached heights, since the rotations only
+     * update the heights of the nodes they move.
+     */
+    @Override
+    public void rebalance() {
+        super.rebalance();
+        recomputeHeights();
+    }
+
+    //Recomputes the cached height of every node, children before parents
+    protected void recomputeHeights() {
+        //In level order, every node comes after its parent, so going backwards handles children first
+        ArrayList<BinaryNode<T>> levelOrder = new ArrayList<>();
+
+        if(root != null) {
+            levelOrder.add(root);
+        }
+
+        for(int i = 0; i < levelOrder.size(); ++i) {
+            BinaryNode<T> node = levelOrder.get(i);
+
+            if(node.getLeft() != null) {
+                levelOrder.add(node.getLeft());
+            }
+
+            if(node.getRight() != null) {
+                levelOrder.add(node.getRight());
+            }
+        }
+
+        for(int i = levelOrder.size() - 1; i >= 0; --i) {
+            ((AVLNode<T>) levelOrder.get(i)).updateHeight();
+        }
+    }
+
+    //Checks that every cached height is right and that no node is out of balance
+    protected boolean isValidAVLTree() {
+        for(BinaryNode<T> current = leftmost(root); current != null; current = nextInOrder(current, root)) {
+            if(heightOf(current) != 1 + Math.max(heightOf(current.getLeft()), heightOf(current.getRight()))
+                    || Math.abs(balanceOf(current)) > 1) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    public static void main(String[] args) {
+        AVLTree<Integer> tree = new AVLTree<>();
+
+        System.out.println(tree.test1() ? "Test 1 passed" : "Test 1 failed");
+        System.out.println(tree.test2() ? "Test 2 passed" : "Test 2 failed");
+        System.out.println(tree.test3() ? "Test 3 passed" : "Test 3 failed");
+    }
+
+    //Runs random inserts, removes and removeAlls and checks the contents, subtree sizes and AVL balance
+    public boolean test1() {
+        AVLTree<Integer> intTree = new AVLTree<>();
+        AVLTree<Integer> multisetTree = new AVLTree<>(true);
+        return removalTest(intTree) && intTree.isValidAVLTree() && removalTest(multisetTree) && multisetTree.isValidAVLTree();
+    }
+
+    //Sorted inserts and removes keep the tree within the AVL height bound at every step
+    public boolean test2() {
+        AVLTree<Integer> intTree = new AVLTree<>();
+        boolean successful = true;
+
+        for(int i = 0; i < 100000; ++i) {
+            intTree.insert(i);
+        }
+
+        //Sorted inserts fill an AVL tree level by level, so 100000 values take 17 levels, as few as any tree can
+        successful = successful && intTree.heightOf(intTree.root) == 17 && intTree.heightHelper(intTree.root) == 17;
+        successful = successful && intTree.isValidAVLTree() && intTree.hasConsistentSizes();
+
+        for(int i = 0; i < 100000; i += 3) {
+            successful = successful && intTree.remove(i);
+        }
+
+        for(int i = 0; i < 20000; ++i) {
+            int key = (int) (Math.random() * 200000d);
+
+            if(Math.random() < 0.5d) {
+                intTree.insert(key);
+            } else {
+                intTree.remove(key);
+            }
+        }
+
+        double bound = 1.45d * Math.log(intTree.size() + 2) / Math.log(2);
+
+        return successful && intTree.heightOf(intTree.root) <= bound && intTree.isValidAVLTree() && intTree.hasConsistentSizes();
+    }
+
+    //Bulk loading, rebalancing and batch inserts leave correct cached heights, and the tree stays balanced through later updates
+    public boolean test3() {
+        AVLTree<Integer> intTree = new AVLTree<>();
+        Integer[] values = new Integer[1000];
+
+        for(int i = 0; i < values.length; ++i) {
+            values[i] = (int) (Math.random() * 500d);
+        }
+
+        intTree.bulkLoad(values);
+        boolean successful = intTree.isValidAVLTree() && intTree.size() == 1000;
+
+        for(int i = 0; i < 500; ++i) {
+            intTree.insert(i);
+            intTree.remove((int) (Math.random() * 500d));
+        }
+
+        intTree.rebalance();
+        successful = successful && intTree.isValidAVLTree() && intTree.hasConsistentSizes();
+
+        int sizeBefore = intTree.size();
+        intTree.insertAll(values);
+        successful = successful && intTree.isValidAVLTree() && intTree.size() == sizeBefore + 1000;
+
+        intTree.setAutoRebalance(1.5d);
+
+        for(int i = 0; i < 1000; ++i) {
+            intTree.insert(1000 + i);
+        }
+
+        return successful && intTree.isValidAVLTree() && intTree.hasConsistentSizes() && intTree.size() == sizeBefore + 2000;
+    }
+}
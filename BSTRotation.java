@@ -1,8 +1,153 @@
+import java.util.Comparator;
+import java.util.function.Function;
+
 public class BSTRotation<T extends Comparable<T>> extends BinarySearchTree<T> {
+    //The lowest factor setAutoRebalance accepts, which leaves the tree a few levels to grow between two O(n) rebalances
+    public static final double MIN_AUTO_REBALANCE_FACTOR = 1.5d;
+
+    //When positive, an insert deeper than this factor times the height of a perfectly balanced tree triggers a rebalance; 0 disables that
+    protected double autoRebalanceFactor = 0d;
+
     public BSTRotation() {
         super();
     }
 
+    //Creates an empty BSTRotation, in multiset mode when multiset is true
+    public BSTRotation(boolean multiset) {
+        super(multiset);
+    }
+
+    //Creates an empty BSTRotation ordered by comparator, or by the natural order of the values when it is null
+    public BSTRotation(Comparator<? super T> comparator) {
+        super(comparator);
+    }
+
+    //Creates an empty BSTRotation ordered by comparator, in multiset mode when multiset is true
+    public BSTRotation(Comparator<? super T> comparator, boolean multiset) {
+        super(comparator, multiset);
+    }
+
+    /**
+     * Creates an empty BSTRotation that orders its values by the keys
+     * keyExtractor returns for them. Like in every tree, the values must still
+     * be Comparable themselves.
+     * @param keyExtractor returns the key a value is ordered by
+     * @return the new tree
+     * @throws NullPointerException if keyExtractor is null
+     */
+    public static <T extends Comparable<T>, K extends Comparable<? super K>> BSTRotation<T> byKey(Function<? super T, ? extends K> keyExtractor) throws NullPointerException {
+        return new BSTRotation<>(Comparator.comparing(keyExtractor));
+    }
+
+    /**
+     * Turns automatic rebalancing on or off. While it is on, any insert that
+     * makes the tree higher than factor times the height of a perfectly
+     * balanced tree of size() values is followed by a call to rebalance().
+     * Every rebalance takes O(n) time, so the factor must leave the tree room
+     * to grow between them: just above 1, nearly every insert into a tree
+     * that was rebalanced would rebalance it again, and inserts would take
+     * quadratic time.
+     * @param factor how many times the height of a perfectly balanced tree the
+     *        height may grow to, at least MIN_AUTO_REBALANCE_FACTOR, or 0 to
+     *        turn automatic rebalancing off
+     * @throws IllegalArgumentException when factor is not 0 and less than
+     *         MIN_AUTO_REBALANCE_FACTOR
+     */
+    public void setAutoRebalance(double factor) throws IllegalArgumentException {
+        if(factor != 0d && !(factor >= MIN_AUTO_REBALANCE_FACTOR)) {
+            throw new IllegalArgumentException("factor must be 0 or at least " + MIN_AUTO_REBALANCE_FACTOR + ": " + factor);
+        }
+
+        autoRebalanceFactor = factor;
+    }
+
+    @Override
+    //Inserts like BinarySearchTree, and rebalances the whole tree when automatic rebalancing is on and newNode ended up too deep
+    protected void insertHelper(BinaryNode<T> newNode, BinaryNode<T> subtree) {
+        super.insertHelper(newNode, subtree);
+
+        if(autoRebalanceFactor > 0d) {
+            double maxHeight = maxAutoRebalanceHeight();
+            int height = 1;
+
+            //Walks up from newNode only as far as needed to find out whether it is too deep
+            for(BinaryNode<T> current = newNode.getParent(); current != null && height <= maxHeight; current = current.getParent()) {
+                ++height;
+            }
+
+            if(height > maxHeight) {
+                rebalance();
+            }
+        }
+    }
+
+    /**
+     * Inserts a whole batch of values like BinarySearchTree does, and then
+     * rebalances the whole tree when automatic rebalancing is on and the
+     * batch made it too high.
+     * @param values the values to insert
+     * @throws NullPointerException if values or any of its elements is null
+     */
+    @Override
+    public void insertAll(T[] values) throws NullPointerException {
+        super.insertAll(values);
+
+        if(autoRebalanceFactor > 0d && heightHelper(root) > maxAutoRebalanceHeight()) {
+            rebalance();
+        }
+    }
+
+    //Returns the highest the tree may grow before automatic rebalancing kicks in: the factor times ceil(log2(size() + 1)), the height of a perfectly balanced tree
+    protected double maxAutoRebalanceHeight() {
+        return autoRebalanceFactor * (32 - Integer.numberOfLeadingZeros(size()));
+    }
+
+    /**
+     * Rebuilds the tree into a perfectly balanced shape with the Day-Stout-Warren
+     * algorithm: rotations first turn the tree into a vine (a chain of right
+     * children in sorted order), and then repeatedly rotate every other node of
+     * the vine to its left to fold it into a balanced tree. Takes O(n) time
+     * and O(1) extra space, and keeps the subtree sizes correct since it only
+     * uses rotate.
+     */
+    public void rebalance() {
+        //The number of nodes, which is less than size() when a multiset node holds several occurrences
+        int n = 0;
+
+        //Tree to vine: rotate left children above their parents until no node has a left child
+        BinaryNode<T> current = root;
+
+        while(current != null) {
+            if(current.getLeft() != null) {
+                BinaryNode<T> left = current.getLeft();
+                rotate(left, current);
+                current = left;
+            } else {
+                ++n;
+                current = current.getRight();
+            }
+        }
+
+        //Vine to tree: first fold away the nodes that don't fit into a perfect tree, they become the bottom level
+        int perfect = Integer.highestOneBit(n + 1) - 1;
+        compressVine(n - perfect);
+
+        for(int remaining = perfect / 2; remaining > 0; remaining /= 2) {
+            compressVine(remaining);
+        }
+    }
+
+    //Left-rotates count nodes of the vine hanging off the right side of the root, every other node starting with the root's right child
+    protected void compressVine(int count) {
+        BinaryNode<T> current = root;
+
+        for(int i = 0; i < count; ++i) {
+            BinaryNode<T> child = current.getRight();
+            rotate(child, current);
+            current = child.getRight();
+        }
+    }
+
     /**
      * Performs the rotation operation on the provided nodes within this tree.
      * When the provided child is a left child of the provided parent, this
@@ -61,6 +206,35 @@ public class BSTRotation<T extends Comparable<T>> extends BinarySearchTree<T> {
         child.setParent(parent.getParent());
         //Sets parent's new parent as the child
         parent.setParent(child);
+
+        //Child now roots the subtree parent used to root, and parent's subtree changed, so recompute it from its new children
+        child.setSize(parent.getSize());
+        parent.updateSize();
+
+        if(metrics != null) {
+            metrics.recordRotation();
+        }
+    }
+
+    /**
+     * Removes the provided node by rotating it down until it has at most one
+     * child, always promoting the child with the larger subtree so the larger
+     * side moves up, and then splicing it out. Costs O(height) and allocates
+     * nothing.
+     * @param node a node of this tree
+     */
+    @Override
+    protected void removeNode(BinaryNode<T> node) {
+        while(node.getLeft() != null && node.getRight() != null) {
+            rotate(promotedChild(node), node);
+        }
+
+        spliceNode(node);
+    }
+
+    //Picks which child of a node with two children is rotated above it while the node is being removed
+    protected BinaryNode<T> promotedChild(BinaryNode<T> node) {
+        return sizeHelper(node.getLeft()) >= sizeHelper(node.getRight()) ? node.getLeft() : node.getRight();
     }
 
     public static void main(String[] args) {
@@ -69,6 +243,11 @@ public class BSTRotation<T extends Comparable<T>> extends BinarySearchTree<T> {
         System.out.println(tree.test1() ? "Test 1 passed" : "Test 1 failed");
         System.out.println(tree.test2() ? "Test 2 passed" : "Test 2 failed");
         System.out.println(tree.test3() ? "Test 3 passed" : "Test 3 failed");
+        System.out.println(tree.test4() ? "Test 4 passed" : "Test 4 failed");
+        System.out.println(tree.test5() ? "Test 5 passed" : "Test 5 failed");
+        System.out.println(tree.test6() ? "Test 6 passed" : "Test 6 failed");
+        System.out.println(tree.test7() ? "Test 7 passed" : "Test 7 failed");
+        System.out.println(tree.test8() ? "Test 8 passed" : "Test 8 failed");
     }
 
     //Tests left rotations, on root/non-root nodes, for 0/1/2/3 shared children
@@ -133,4 +312,154 @@ public class BSTRotation<T extends Comparable<T>> extends BinarySearchTree<T> {
 
         return successful;
     }
+
+    //Performs random rotations on a random tree and checks that the subtree sizes stay correct
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public boolean test4() {
+        BSTRotation<Integer> intTree = new BSTRotation<>();
+        BinaryNode<Integer>[] nodes = new BinaryNode[200];
+
+        for(int i = 0; i < 200; ++i) {
+            nodes[i] = new BinaryNode<Integer>((int) (Math.random() * 1000d));
+
+            if(i == 0) {
+                intTree.root = nodes[0];
+            } else {
+                intTree.insertHelper(nodes[i], intTree.root);
+            }
+        }
+
+        boolean successful = true;
+
+        for(int i = 0; i < 1000; ++i) {
+            BinaryNode<Integer> child = nodes[(int) (Math.random() * 200d)];
+
+            if(child.getParent() != null) {
+                intTree.rotate(child, child.getParent());
+                successful = successful && intTree.hasConsistentSizes();
+            }
+        }
+
+        return successful && intTree.size() == 200 && intTree.root.getParent() == null;
+    }
+
+    //Inserts and removes random integers, removing nodes by rotating them down
+    public boolean test5() {
+        return removalTest(new BSTRotation<>()) && removalTest(new BSTRotation<>(true));
+    }
+
+    //Rebalances chains and random trees of many sizes, and checks that they end up with minimal height and the same values
+    public boolean test6() {
+        BSTRotation<Integer> intTree = new BSTRotation<>();
+        boolean successful = true;
+
+        for(int n = 0; n <= 600; ++n) {
+            intTree.clear();
+            boolean chain = n % 2 == 0;
+
+            for(int i = 0; i < n; ++i) {
+                intTree.insert(chain ? i : (int) (Math.random() * 1000d));
+            }
+
+            int[] values = new int[n];
+
+            for(int k = 0; k < n; ++k) {
+                values[k] = intTree.select(k);
+            }
+
+            intTree.rebalance();
+            //A perfectly balanced tree of n nodes has ceil(log2(n + 1)) levels
+            int minimalHeight = 32 - Integer.numberOfLeadingZeros(n);
+            successful = successful && intTree.heightHelper(intTree.root) == minimalHeight && intTree.hasConsistentSizes();
+
+            for(int k = 0; k < n; ++k) {
+                successful = successful && intTree.select(k) == values[k];
+            }
+        }
+
+        return successful;
+    }
+
+    //Inserts a long sorted run with automatic rebalancing on, which would otherwise build a chain
+    public boolean test7() {
+        BSTRotation<Integer> intTree = new BSTRotation<>();
+        intTree.setAutoRebalance(2d);
+
+        for(int i = 0; i < 20000; ++i) {
+            intTree.insert(i);
+        }
+
+        //A perfectly balanced tree of 20000 values is 15 levels high
+        boolean successful = intTree.heightHelper(intTree.root) <= 2 * 15;
+        successful = successful && intTree.size() == 20000 && intTree.contains(0) && intTree.contains(19999);
+
+        //Batches go down without rebalancing on the way, so the sizes stay right even when a batch leaves the tree too high
+        for(int round = 0; round < 200; ++round) {
+            BSTRotation<Integer> batchTree = new BSTRotation<>();
+            batchTree.setAutoRebalance(1.5d);
+
+            for(int i = 0; i < 200; ++i) {
+                batchTree.insert((int) (Math.random() * 1000d));
+            }
+
+            Integer[] batch = new Integer[10 + (int) (Math.random() * 61d)];
+
+            for(int i = 0; i < batch.length; ++i) {
+                batch[i] = (int) (Math.random() * 1000d);
+            }
+
+            batchTree.insertAll(batch);
+            successful = successful && batchTree.size() == 200 + batch.length && batchTree.hasConsistentSizes();
+            successful = successful && batchTree.select(batchTree.rank(batch[0])).equals(batch[0]);
+        }
+
+        for(double factor : new double[] {0.5d, 1d, 1.01d, Double.NaN}) {
+            try {
+                intTree.setAutoRebalance(factor);
+                successful = false;
+            } catch(IllegalArgumentException e) {
+                //expected, a factor this low would rebalance on nearly every insert
+            }
+        }
+
+        //Random inserts into a tree that is rebalanced at the lowest factor allowed still take few rebalances
+        BSTRotation<Integer> lowFactorTree = new BSTRotation<>();
+        lowFactorTree.setAutoRebalance(MIN_AUTO_REBALANCE_FACTOR);
+        TreeMetrics metrics = lowFactorTree.enableMetrics();
+
+        for(int i = 0; i < 20000; ++i) {
+            lowFactorTree.insert((int) (Math.random() * 1000000d));
+        }
+
+        //Each rebalance of n nodes takes about 2n rotations, so a rebalance on nearly every insert would take billions
+        successful = successful && metrics.getRotations() < 2000000 && lowFactorTree.hasConsistentSizes();
+
+        return successful;
+    }
+
+    //A tree ordered by a key extractor keeps that order through rotations, rebalancing and removes
+    public boolean test8() {
+        BSTRotation<String> byLength = BSTRotation.byKey(String::length);
+        BSTRotation<Integer> reversed = new BSTRotation<>(Comparator.<Integer>reverseOrder(), true);
+        boolean successful = true;
+
+        for(int i = 0; i < 2000; ++i) {
+            byLength.insert("x".repeat(i % 100));
+            reversed.insert(i % 100);
+        }
+
+        byLength.rebalance();
+        reversed.rebalance();
+        successful = successful && byLength.heightHelper(byLength.root) == 11 && reversed.heightHelper(reversed.root) == 7;
+
+        for(int length = 0; length < 100; ++length) {
+            successful = successful && byLength.count("y".repeat(length)) == 20 && reversed.count(length) == 20;
+            successful = successful && byLength.select(20 * length).length() == length && reversed.select(20 * length) == 99 - length;
+        }
+
+        successful = successful && byLength.remove("z") && byLength.count("x") == 19 && byLength.removeAll("") == 20;
+        successful = successful && reversed.removeAll(99) == 20 && reversed.first() == 98;
+
+        return successful && byLength.size() == 1979 && byLength.hasConsistentSizes() && reversed.hasConsistentSizes();
+    }
 }
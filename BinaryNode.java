@@ -1,6 +1,6 @@
-import java.util.LinkedList;
-import java.util.Queue;
-import java.util.Stack;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayDeque;
 
 /**
  * This class represents a node for a Binary Search Tree that holds a single 
@@ -9,6 +9,14 @@ import java.util.Stack;
  */
 public class BinaryNode<T> {
 
+    // the traversal orders appendTraversal supports
+    private static final int PRE_ORDER = 0;
+    private static final int IN_ORDER = 1;
+    private static final int POST_ORDER = 2;
+    private static final int LEVEL_ORDER = 3;
+    // number of characters collected before they are handed to the Appendable
+    protected static final int CHUNK_SIZE = 8192;
+
     // stores the data value for the node
     protected T data;
     // reference to the node's parent
@@ -17,6 +25,10 @@ public class BinaryNode<T> {
     protected BinaryNode<T> left = null;
     // reference to the node's right child
     protected BinaryNode<T> right = null;
+    // number of occurrences of data this node stands for, more than 1 only in a multiset tree
+    protected int count = 1;
+    // number of values in the subtree rooted at this node, counting every occurrence, including this node's
+    protected int size = 1;
 
     /**
      * Constructor that creates a new node with the value data. Both parent 
@@ -48,6 +60,17 @@ public class BinaryNode<T> {
      */
     public BinaryNode<T> getParent() { return this.parent; }
 
+    /**
+     * @return the number of occurrences of the value stored in this node
+     */
+    public int getCount() { return this.count; }
+
+    /**
+     * @return the number of values in the subtree rooted at this node,
+     * including this node's, with every occurrence counted
+     */
+    public int getSize() { return this.size; }
+
     /**
      * Gives this node a new value and deletes the old value.
      * @param newData the new value to store in this node
@@ -71,6 +94,27 @@ public class BinaryNode<T> {
      * @param newRightChild the new right child for this node
      */
     public void setRight(BinaryNode<T> newRightChild) { this.right = newRightChild; }
+
+    /**
+     * Overwrites the number of occurrences of this node's value. The subtree
+     * sizes of this node and its ancestors are not changed.
+     * @param newCount the new number of occurrences
+     */
+    public void setCount(int newCount) { this.count = newCount; }
+
+    /**
+     * Overwrites the number of values stored for the subtree rooted at this node.
+     * @param newSize the new subtree size for this node
+     */
+    public void setSize(int newSize) { this.size = newSize; }
+
+    /**
+     * Recomputes the subtree size of this node from its own count and the
+     * sizes stored in its children, which must already be correct.
+     */
+    public void updateSize() {
+        this.size = this.count + (this.left == null ? 0 : this.left.size) + (this.right == null ? 0 : this.right.size);
+    }
     
     /**
      * @return true when this node has a parent and is the right child of
@@ -90,40 +134,13 @@ public class BinaryNode<T> {
     }
     
     /**
-     * Performs an level-order traversal of the subtree rooted at this node
+     * Performs a level-order traversal of the subtree rooted at this node
      * and generates a string represeation of those nodes' contents.
      * @return a string of node values in level-order
      */
     public String toLevelOrderString() {
-        // create a linked list that we'll use as a queue to store inprocessed nodes
-        Queue<BinaryNode<T>> nodeList = new LinkedList<>();
-        // add this node to the queue first
-        nodeList.add(this);
-        // create the buffer to assemble the string efficiently
-        StringBuffer sb = new StringBuffer();
-        // add the bracket preceding the list of nodes to the buffer first
-        sb.append("[ ");
-        // keep processing nodes as long as we have any left on the queue
-        while (!nodeList.isEmpty()) {
-            // if it exists, add the left child of the head of the queue to the queue
-            if (nodeList.peek().getLeft() != null) {
-                nodeList.add(nodeList.peek().getLeft());
-            }
-            // if it exists, add the right child of the head of the queue to the queue
-            if (nodeList.peek().getRight() != null) {
-                nodeList.add(nodeList.peek().getRight());
-            }
-            // add the head of the queue to the string buffer and remove from queue
-            sb.append(nodeList.poll().toString());
-            // add a comma to separate values to the buffer, or close the bracket if
-            // we've just added the last node to it
-            if (nodeList.isEmpty()) {
-                sb.append(" ]");
-            } else {
-                sb.append(", ");
-            }
-        }
-        // return the string built with the string buffer
+        StringBuilder sb = new StringBuilder();
+        appendToString(sb, LEVEL_ORDER);
         return sb.toString();
     }
 
@@ -133,42 +150,199 @@ public class BinaryNode<T> {
      * @return a string of node value in in-order
      */
     public String toInOrderString() {
-        // create a stack to keep track of unvisited nodes
-        Stack<BinaryNode<T>> stack = new Stack<>();
-        // add root (this node) to the stack first
-        stack.push(this);
-        // follow the left child references and add all nodes on the path from this node
-        // to its left-most descendant to the stack
-        while (stack.peek().getLeft() != null) {
-            stack.push(stack.peek().getLeft());
-        }
-        // create a buffer to assemble the string efficiently
-        StringBuffer sb = new StringBuffer();
-        // add the bracket preceding the list of nodes to the buffer first
-        sb.append("[ ");
-        // keep processing nodes as long as the stack is not empty
-        while (!stack.isEmpty()) {
-            // pop the top node from the stack
-            BinaryNode<T> current = stack.pop();
-            // add popped node to the string
-            sb.append(current.toString());
-            // handle the right subtree of the popped node
-            if (current.getRight() != null) {
-                stack.push(current.getRight());
-                while (stack.peek().getLeft() != null) {
-                    stack.push(stack.peek().getLeft());
+        StringBuilder sb = new StringBuilder();
+        appendToString(sb, IN_ORDER);
+        return sb.toString();
+    }
+
+    /**
+     * Writes the values of the subtree rooted at this node in pre-order to
+     * out, in the same "[ a, b, c ]" format as toInOrderString. A node of a
+     * multiset tree is written once per occurrence it counts, so the output
+     * holds as many values as the tree's size() and iterator. The walk
+     * follows parent references instead of keeping a stack, and the text is
+     * handed to out in chunks of about CHUNK_SIZE characters, so the memory
+     * used doesn't grow with the tree.
+     * @param out where to write the values, for example a BufferedWriter
+     * @throws IOException if out throws it
+     */
+    public void appendPreOrder(Appendable out) throws IOException {
+        appendTraversal(out, PRE_ORDER);
+    }
+
+    /**
+     * Writes the values of the subtree rooted at this node in in-order to
+     * out, like appendPreOrder.
+     * @param out where to write the values
+     * @throws IOException if out throws it
+     */
+    public void appendInOrder(Appendable out) throws IOException {
+        appendTraversal(out, IN_ORDER);
+    }
+
+    /**
+     * Writes the values of the subtree rooted at this node in post-order to
+     * out, like appendPreOrder.
+     * @param out where to write the values
+     * @throws IOException if out throws it
+     */
+    public void appendPostOrder(Appendable out) throws IOException {
+        appendTraversal(out, POST_ORDER);
+    }
+
+    /**
+     * Writes the values of the subtree rooted at this node in level-order to
+     * out, like appendPreOrder. Level-order can't follow parent references,
+     * so it keeps a queue of the nodes still to be written, which never holds
+     * much more than the widest level of the tree.
+     * @param out where to write the values
+     * @throws IOException if out throws it
+     */
+    public void appendLevelOrder(Appendable out) throws IOException {
+        appendTraversal(out, LEVEL_ORDER);
+    }
+
+    // writes the values of this subtree in the given order, in chunks
+    private void appendTraversal(Appendable out, int order) throws IOException {
+        StringBuilder chunk = new StringBuilder(CHUNK_SIZE + 64);
+        // only level-order needs a queue, the other orders follow parent references
+        ArrayDeque<BinaryNode<T>> queue = order == LEVEL_ORDER ? new ArrayDeque<>() : null;
+        BinaryNode<T> current = order == PRE_ORDER || order == LEVEL_ORDER ? this
+            : order == IN_ORDER ? firstInOrder(this) : firstPostOrder(this);
+
+        chunk.append("[ ");
+
+        while (current != null) {
+            String value = current.toString();
+
+            // a multiset node stands for count occurrences, each written like the iterators return each
+            for (int i = 0; i < current.count; ++i) {
+                if (i > 0) {
+                    chunk.append(", ");
+                }
+                chunk.append(value);
+
+                if (chunk.length() >= CHUNK_SIZE) {
+                    out.append(chunk);
+                    chunk.setLength(0);
                 }
             }
-            // add a comma to separate values to the buffer, or close the bracket if
-            // we've just added the last node to it
-            if (!stack.isEmpty()) {
-                sb.append(", ");
+
+            // find the next node, or null once the whole subtree is written
+            if (order == LEVEL_ORDER) {
+                if (current.left != null) {
+                    queue.add(current.left);
+                }
+                if (current.right != null) {
+                    queue.add(current.right);
+                }
+                current = queue.poll();
+            } else if (order == PRE_ORDER) {
+                current = nextPreOrder(current, this);
+            } else if (order == IN_ORDER) {
+                current = nextInOrder(current, this);
             } else {
-                sb.append(" ]");
+                current = nextPostOrder(current, this);
+            }
+
+            chunk.append(current == null ? " ]" : ", ");
+
+            if (chunk.length() >= CHUNK_SIZE || current == null) {
+                out.append(chunk);
+                chunk.setLength(0);
             }
         }
-        // return the string built with the string buffer
-        return sb.toString();
+    }
+
+    // appends a traversal to a StringBuilder, which never throws an IOException
+    private void appendToString(StringBuilder sb, int order) {
+        try {
+            appendTraversal(sb, order);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Returns the node after node in a pre-order walk of the subtree rooted
+     * at subtreeRoot, following parent references.
+     * @param node a node of that subtree
+     * @param subtreeRoot the root of the subtree, or null for the whole tree
+     * @return the next node, or null when node is the last one
+     */
+    public static <T> BinaryNode<T> nextPreOrder(BinaryNode<T> node, BinaryNode<T> subtreeRoot) {
+        if (node.left != null) {
+            return node.left;
+        }
+        if (node.right != null) {
+            return node.right;
+        }
+        // climb until we come up from a left child whose parent has a right child we haven't visited
+        while (node != subtreeRoot && node.parent != null) {
+            BinaryNode<T> parent = node.parent;
+            if (parent.left == node && parent.right != null) {
+                return parent.right;
+            }
+            if (parent == subtreeRoot) {
+                return null;
+            }
+            node = parent;
+        }
+        return null;
+    }
+
+    /**
+     * Returns the node after node in an in-order walk of the subtree rooted
+     * at subtreeRoot, following parent references.
+     * @param node a node of that subtree
+     * @param subtreeRoot the root of the subtree, or null for the whole tree
+     * @return the next node, or null when node is the last one
+     */
+    public static <T> BinaryNode<T> nextInOrder(BinaryNode<T> node, BinaryNode<T> subtreeRoot) {
+        if (node.right != null) {
+            return firstInOrder(node.right);
+        }
+        while (node != subtreeRoot && node.parent != null && node.parent.right == node) {
+            node = node.parent;
+        }
+        return node == subtreeRoot ? null : node.parent;
+    }
+
+    // returns the node after node in a post-order walk of the subtree rooted at subtreeRoot
+    private static <T> BinaryNode<T> nextPostOrder(BinaryNode<T> node, BinaryNode<T> subtreeRoot) {
+        if (node == subtreeRoot || node.parent == null) {
+            return null;
+        }
+        BinaryNode<T> parent = node.parent;
+        // after a left subtree comes the right subtree, if there is one, and then the parent
+        if (parent.left == node && parent.right != null) {
+            return firstPostOrder(parent.right);
+        }
+        return parent;
+    }
+
+    /**
+     * Returns the leftmost node of the subtree rooted at node, where an
+     * in-order walk starts.
+     * @param node the root of the subtree, or null
+     * @return the leftmost node, or null when node is null
+     */
+    public static <T> BinaryNode<T> firstInOrder(BinaryNode<T> node) {
+        if (node == null) {
+            return null;
+        }
+        while (node.left != null) {
+            node = node.left;
+        }
+        return node;
+    }
+
+    // returns the node a post-order walk of the subtree starts at: the first leaf reached by going left whenever possible
+    private static <T> BinaryNode<T> firstPostOrder(BinaryNode<T> node) {
+        while (node.left != null || node.right != null) {
+            node = node.left != null ? node.left : node.right;
+        }
+        return node;
     }
 
 }
@@ -1,12 +1,166 @@
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Spliterator;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiFunction;
+import java.util.function.BinaryOperator;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+public class BinarySearchTree<T extends Comparable<T>> implements SortedCollection<T>, Iterable<T> {
+    //Subtrees and ranges of at most this many values are processed sequentially by the parallel operations
+    protected static final int PARALLEL_THRESHOLD = 4096;
+    //Batches of at most this many keys headed into a subtree are finished with one descent per key
+    protected static final int BATCH_SPLIT_MINIMUM = 8;
 
-public class BinarySearchTree<T extends Comparable<T>> implements SortedCollection<T> {
     //The root node of this BinarySearchTree
     protected BinaryNode<T> root;
+    //Where inserts, lookups and rotations are recorded, or null while metrics are disabled
+    protected TreeMetrics metrics;
+    //Whether equal values share one node that counts their occurrences, instead of each getting a node of its own
+    protected final boolean multiset;
+    //The order of the values, or null for their natural order
+    protected final Comparator<? super T> comparator;
 
     //Creates a BinarySearchTree with a null root
     public BinarySearchTree() {
+        this(null, false);
+    }
+
+    /**
+     * Creates an empty BinarySearchTree. In multiset mode, inserting a value
+     * that is already in the tree only increments the count of the node
+     * holding it, so memory and height grow with the number of distinct
+     * values instead of the number of inserts. Every occurrence still counts
+     * towards size, select and rank, and is returned by the iterators.
+     * @param multiset true to keep one counted node per distinct value
+     */
+    public BinarySearchTree(boolean multiset) {
+        this(null, multiset);
+    }
+
+    /**
+     * Creates an empty BinarySearchTree that orders its values with the
+     * provided comparator instead of their natural order. Values the
+     * comparator finds equal are treated as duplicates, and the values passed
+     * to contains must then be of type T. T must still be Comparable, like
+     * for every tree, even though its own order is never used; a type that
+     * isn't has to be wrapped in one that is before it can be stored.
+     * @param comparator the order of the values, or null for their natural order
+     */
+    public BinarySearchTree(Comparator<? super T> comparator) {
+        this(comparator, false);
+    }
+
+    /**
+     * Creates an empty BinarySearchTree ordered by comparator, in multiset
+     * mode when multiset is true. In multiset mode, values the comparator
+     * finds equal share one node, which keeps the value inserted first.
+     * @param comparator the order of the values, or null for their natural order
+     * @param multiset true to keep one counted node per distinct value
+     */
+    public BinarySearchTree(Comparator<? super T> comparator, boolean multiset) {
         root = null;
+        this.comparator = comparator;
+        this.multiset = multiset;
+    }
+
+    /**
+     * Creates an empty tree that orders its values by the keys keyExtractor
+     * returns for them, like new BinarySearchTree(Comparator.comparing(keyExtractor)).
+     * The values themselves must still be Comparable, as the comparator
+     * constructor explains, so a record or class that isn't can't be stored
+     * by its key alone.
+     * @param keyExtractor returns the key a value is ordered by
+     * @return the new tree
+     * @throws NullPointerException if keyExtractor is null
+     */
+    public static <T extends Comparable<T>, K extends Comparable<? super K>> BinarySearchTree<T> byKey(Function<? super T, ? extends K> keyExtractor) throws NullPointerException {
+        return new BinarySearchTree<>(Comparator.comparing(keyExtractor));
+    }
+
+    /**
+     * @return true when equal values share one counted node
+     */
+    public boolean isMultiset() {
+        return multiset;
+    }
+
+    /**
+     * @return the comparator that orders the values of this tree, or null when
+     * they are in their natural order
+     */
+    public Comparator<? super T> comparator() {
+        return comparator;
+    }
+
+    /**
+     * Compares a value to a value of this tree in the order of this tree:
+     * with the comparator when there is one, and otherwise in their natural
+     * order. Every search and insert compares through here, once per level.
+     * Natural-order Integer, Long and String values are compared directly,
+     * without calling compareTo through the Comparable interface, so the JIT
+     * can inline the comparison even where the tree is used with many
+     * different value types and a compareTo call site would be megamorphic.
+     * @param a the value being looked for, inserted or compared
+     * @param b a value of this tree
+     * @return a negative number, zero or a positive number as a is less than,
+     * equal to or greater than b
+     */
+    @SuppressWarnings("unchecked")
+    protected int compare(Comparable<T> a, T b) {
+        if(comparator != null) {
+            return comparator.compare((T) a, b);
+        }
+
+        //These classes are final and only comparable to themselves, so b is of the same class as a
+        if(a instanceof Integer) {
+            return Integer.compare((Integer) a, (Integer) (Object) b);
+        } else if(a instanceof Long) {
+            return Long.compare((Long) a, (Long) (Object) b);
+        } else if(a instanceof String) {
+            return ((String) a).compareTo((String) (Object) b);
+        }
+
+        return a.compareTo(b);
+    }
+
+    /**
+     * Creates a tree holding the provided values in a perfectly balanced
+     * shape, in O(n) time when the values are already sorted.
+     * @param sorted the values for the new tree, ideally in ascending order;
+     *        unsorted values are sorted first
+     * @return the new tree
+     * @throws NullPointerException if sorted or any of its values is null
+     */
+    public static <T extends Comparable<T>> BinarySearchTree<T> fromSorted(T[] sorted) throws NullPointerException {
+        BinarySearchTree<T> tree = new BinarySearchTree<>();
+        tree.bulkLoad(sorted);
+        return tree;
+    }
+
+    /**
+     * Creates the node that will hold data in this tree. Subclasses that store
+     * extra information in their nodes override this.
+     * @param data the value for the new node
+     * @return a new node holding data, with no parent or children
+     */
+    protected BinaryNode<T> createNode(T data) {
+        return new BinaryNode<>(data);
     }
 
     @Override
@@ -17,54 +171,115 @@ public class BinarySearchTree<T extends Comparable<T>> implements SortedCollecti
             throw new NullPointerException();
         }
 
+        //In multiset mode a value that is already in the tree only needs its count incremented
+        if(addOccurrence(data) != null) {
+            return;
+        }
+
         //Creates a node representing the data to be added
         BinaryNode<T> newNode = new BinaryNode<>(data);
 
         //If the tree is empty, then set root to the newNode
         if(this.isEmpty()) {
             root = newNode;
+
+            if(metrics != null) {
+                metrics.recordInsert(0);
+            }
+
             return;
         }
         
         //Otherwise, call on insert helper to find out where to insert the newNode
         insertHelper(newNode, root);
+
+        if(metrics != null) {
+            metrics.recordInsert(depthOf(newNode));
+        }
     }
 
     /**
-     * Performs the naive binary search tree insert algorithm to recursively
+     * Performs the naive binary search tree insert algorithm to iteratively
      * insert the provided newNode (which has already been initialized with a
      * data value) into the provided tree/subtree. When the provided subtree
-     * is null, this method does nothing. 
+     * is null, this method does nothing. The subtree size of every node on
+     * the path is incremented, so subtree should be the root of the tree.
      */
     protected void insertHelper(BinaryNode<T> newNode, BinaryNode<T> subtree) {
-        BinaryNode<T> subtreeRoot = null;
+        linkBelow(newNode, subtree);
+    }
 
-        //Checks whether newNode is less than or equal to current node
-        if(newNode.getData().compareTo(subtree.getData()) <= 0d) {
-            //Checks to see if the next left node is null
-            if(subtree.getLeft() == null) {
-                subtree.setLeft(newNode);
-            } else {
-                //If the next left node is not null, then set it as the next subtree's root
-                subtreeRoot = subtree.getLeft();
-            }
-        } else {
-            //Repeating the same as the above if-else, but for the case where newNode is greater
-            if(subtree.getRight() == null) {
-                subtree.setRight(newNode);
+    //The walk of insertHelper, which subclasses can't override, so batch inserts never trigger what an override does after each insert
+    private void linkBelow(BinaryNode<T> newNode, BinaryNode<T> subtree) {
+        //Walks down from subtree, one level per iteration, until it finds the empty child slot where newNode belongs
+        while(subtree != null) {
+            //newNode ends up somewhere below the current node, so its subtree grows by one
+            subtree.setSize(subtree.getSize() + 1);
+
+            //Checks whether newNode is less than or equal to current node
+            if(compare(newNode.getData(), subtree.getData()) <= 0) {
+                //If the next left node is null, newNode becomes the left child of the current node
+                if(subtree.getLeft() == null) {
+                    subtree.setLeft(newNode);
+                    //Correctly links up newNode with the rest of the nodes in the tree
+                    newNode.setParent(subtree);
+                    return;
+                }
+
+                //If the next left node is not null, then keep walking down from it
+                subtree = subtree.getLeft();
             } else {
-                subtreeRoot = subtree.getRight();
+                //Repeating the same as the above, but for the case where newNode is greater
+                if(subtree.getRight() == null) {
+                    subtree.setRight(newNode);
+                    newNode.setParent(subtree);
+                    return;
+                }
+
+                subtree = subtree.getRight();
             }
         }
+    }
 
-        //If the next subtree's root is null, then we know the newNode will be the root of that subtree
-        if(subtreeRoot == null) {
-            //Correctly links up newNode with the rest of the nodes in the tree
-            newNode.parent = subtree;
-        } else {
-            //Otherwise, we have to traverse deeper into the tree to find the correct insertion point
-            insertHelper(newNode, subtreeRoot);
+    /**
+     * In multiset mode, looks for the node holding a value equal to data and
+     * counts one more occurrence in it, which allocates nothing. Inserts call
+     * this first, and only create a node when it returns null.
+     * @param data the value being inserted
+     * @return the node that now holds one more occurrence of data, or null
+     * when data needs a node of its own, which is always the case outside of
+     * multiset mode
+     */
+    protected BinaryNode<T> addOccurrence(T data) {
+        if(!multiset) {
+            return null;
+        }
+
+        int depth = 0;
+
+        for(BinaryNode<T> current = root; current != null; ++depth) {
+            int comparison = compare(data, current.getData());
+
+            if(comparison == 0) {
+                changeCount(current, 1);
+
+                if(metrics != null) {
+                    metrics.recordInsert(depth);
+                }
+
+                return current;
+            }
+
+            current = comparison < 0 ? current.getLeft() : current.getRight();
         }
+
+        return null;
+    }
+
+    //Adds delta to the count of node, and to the subtree sizes of node and all of its ancestors
+    protected void changeCount(BinaryNode<T> node, int delta) {
+        node.setCount(node.getCount() + delta);
+        adjustSizes(node, delta);
     }
 
     @Override
@@ -78,44 +293,1570 @@ public class BinarySearchTree<T extends Comparable<T>> implements SortedCollecti
         return containsHelper(data, root);
     }
 
-    //Determines if the subtree node is null (data was not in tree), if it is equal to data, or if we have to go further in the tree to determine if data is contained
+    //Determines if data is contained in the subtree by searching for a node that holds it
     protected boolean containsHelper(Comparable<T> data, BinaryNode<T> subtree) {
-        if(subtree == null) {
+        return lookupNode(data, subtree) != null;
+    }
+
+    //Searches like findNode, and records the search as a lookup while metrics are enabled; removes and counts use findNode, so only searches are recorded
+    protected BinaryNode<T> lookupNode(Comparable<T> data, BinaryNode<T> subtree) {
+        //The field is read once, since disableMetrics may set it to null while another thread is searching
+        TreeMetrics recording = metrics;
+
+        //Counting comparisons is kept out of the plain loop, so a tree without metrics doesn't pay for it
+        if(recording != null) {
+            return findNodeMeasured(data, subtree, recording);
+        }
+
+        return findNode(data, subtree);
+    }
+
+    //Walks down from the subtree node until it reaches null (data was not in tree) or a node equal to data, and returns that node
+    protected BinaryNode<T> findNode(Comparable<T> data, BinaryNode<T> subtree) {
+        //A single three-way comparison per level decides between left, right and found. Testing for the two directions first keeps them
+        //as branches: otherwise the JIT may pick the child with a conditional move, and the next node can't be loaded until the comparison is done
+        while(subtree != null) {
+            int comparison = compare(data, subtree.getData());
+
+            if(comparison < 0) {
+                subtree = subtree.getLeft();
+            } else if(comparison > 0) {
+                subtree = subtree.getRight();
+            } else {
+                return subtree;
+            }
+        }
+
+        return null;
+    }
+
+    //Same search as findNode, but counts the nodes it compares and records the lookup into recording
+    private BinaryNode<T> findNodeMeasured(Comparable<T> data, BinaryNode<T> subtree, TreeMetrics recording) {
+        int compared = 0;
+
+        while(subtree != null) {
+            ++compared;
+            int comparison = compare(data, subtree.getData());
+
+            if(comparison < 0) {
+                subtree = subtree.getLeft();
+            } else if(comparison > 0) {
+                subtree = subtree.getRight();
+            } else {
+                break;
+            }
+        }
+
+        recording.recordLookup(compared);
+        return subtree;
+    }
+
+    /**
+     * Starts recording inserts, lookups and rotations of this tree into a
+     * TreeMetrics. Calling this again keeps the metrics already recording.
+     * @return the metrics this tree records into
+     */
+    public TreeMetrics enableMetrics() {
+        if(metrics == null) {
+            metrics = new TreeMetrics();
+        }
+
+        return metrics;
+    }
+
+    //Stops recording, the metrics recorded so far stay readable through whoever holds them
+    public void disableMetrics() {
+        metrics = null;
+    }
+
+    /**
+     * @return the metrics this tree records into, or null while metrics are
+     * disabled
+     */
+    public TreeMetrics getMetrics() {
+        return metrics;
+    }
+
+    //Returns the number of levels between node and the root, found by walking up the parent references
+    protected int depthOf(BinaryNode<T> node) {
+        int depth = 0;
+
+        for(BinaryNode<T> current = node.getParent(); current != null; current = current.getParent()) {
+            ++depth;
+        }
+
+        return depth;
+    }
+
+    /**
+     * Removes a single occurrence of data from the tree. When data is stored
+     * more than once, the other occurrences stay in the tree.
+     * @param data the value to remove
+     * @return true when an occurrence of data was removed, and false when
+     * data was not in the tree
+     * @throws NullPointerException if data argument is null
+     */
+    public boolean remove(T data) throws NullPointerException {
+        if(data == null) {
+            throw new NullPointerException();
+        }
+
+        BinaryNode<T> node = findNode(data, root);
+
+        if(node == null) {
             return false;
-        } else if(data.equals(subtree.getData())) {
-            return true;
-        } else if(data.compareTo(subtree.getData()) < 0d) {
-            return containsHelper(data, subtree.getLeft());
+        }
+
+        //A node holding more than one occurrence stays in the tree with one less
+        if(node.getCount() > 1) {
+            changeCount(node, -1);
+        } else {
+            removeNode(node);
+        }
+
+        return true;
+    }
+
+    /**
+     * Removes every occurrence of data from the tree.
+     * @param data the value to remove
+     * @return the number of occurrences that were removed
+     * @throws NullPointerException if data argument is null
+     */
+    public int removeAll(T data) throws NullPointerException {
+        if(data == null) {
+            throw new NullPointerException();
+        }
+
+        int removed = 0;
+
+        for(BinaryNode<T> node = findNode(data, root); node != null; node = findNode(data, root)) {
+            removed += node.getCount();
+            removeNode(node);
+        }
+
+        return removed;
+    }
+
+    /**
+     * Counts the occurrences of data in the tree. In multiset mode they are
+     * all held by one node, so this takes a single search.
+     * @param data the value to count
+     * @return the number of times data is stored in the tree
+     * @throws NullPointerException if data argument is null
+     */
+    public int count(T data) throws NullPointerException {
+        if(data == null) {
+            throw new NullPointerException();
+        }
+
+        if(multiset) {
+            BinaryNode<T> node = findNode(data, root);
+            return node == null ? 0 : node.getCount();
+        }
+
+        return rankHelper(data, true) - rankHelper(data, false);
+    }
+
+    /**
+     * Takes the provided node out of the tree, with all of the occurrences it
+     * holds. Subclasses that keep extra
+     * structure (such as balance) override this to restore it after removal.
+     * @param node a node of this tree
+     */
+    protected void removeNode(BinaryNode<T> node) {
+        spliceNode(node);
+    }
+
+    /**
+     * Unlinks the provided node from the tree without allocating anything.
+     * A node with at most one child is replaced by that child. A node with two
+     * children is replaced by its in-order successor, which is first spliced
+     * out of the right subtree, so every other node keeps its identity. The
+     * subtree sizes of all ancestors of the changed positions lose the
+     * occurrences that left them.
+     * @param node a node of this tree
+     * @return the lowest node whose subtree lost a node: the parent of the
+     * position that was vacated, or null when that position was the root
+     */
+    protected BinaryNode<T> spliceNode(BinaryNode<T> node) {
+        BinaryNode<T> vacatedParent;
+
+        if(node.getLeft() == null || node.getRight() == null) {
+            vacatedParent = node.getParent();
+            adjustSizes(vacatedParent, -node.getCount());
+            replaceChild(node, node.getLeft() != null ? node.getLeft() : node.getRight());
+        } else {
+            BinaryNode<T> successor = leftmost(node.getRight());
+
+            //The nodes between the successor and node lose the successor's occurrences, node and everything above it lose node's own
+            for(BinaryNode<T> current = successor.getParent(); current != node; current = current.getParent()) {
+                current.setSize(current.getSize() - successor.getCount());
+            }
+
+            adjustSizes(node, -node.getCount());
+
+            if(successor.getParent() == node) {
+                vacatedParent = successor;
+            } else {
+                //Detach the successor from the bottom of the right subtree, and give it the whole right subtree instead
+                vacatedParent = successor.getParent();
+                replaceChild(successor, successor.getRight());
+                successor.setRight(node.getRight());
+                node.getRight().setParent(successor);
+            }
+
+            replaceChild(node, successor);
+            successor.setLeft(node.getLeft());
+            node.getLeft().setParent(successor);
+            successor.setSize(node.getSize());
+        }
+
+        //Drop the removed node's references so it does not keep parts of the tree reachable
+        node.setParent(null);
+        node.setLeft(null);
+        node.setRight(null);
+        node.setSize(node.getCount());
+
+        return vacatedParent;
+    }
+
+    //Links replacement (which may be null) into the position node holds under its parent, or at the root
+    protected void replaceChild(BinaryNode<T> node, BinaryNode<T> replacement) {
+        BinaryNode<T> parent = node.getParent();
+
+        if(parent == null) {
+            root = replacement;
+        } else if(parent.getLeft() == node) {
+            parent.setLeft(replacement);
         } else {
-            return containsHelper(data, subtree.getRight());
+            parent.setRight(replacement);
+        }
+
+        if(replacement != null) {
+            replacement.setParent(parent);
+        }
+    }
+
+    //Adds delta to the subtree size of node and of every ancestor above it
+    protected void adjustSizes(BinaryNode<T> node, int delta) {
+        for(; node != null; node = node.getParent()) {
+            node.setSize(node.getSize() + delta);
         }
     }
 
     @Override
+    //Every node keeps the size of its subtree up to date, so the size of the tree is the size stored in the root
     public int size() {
         return sizeHelper(root);
     }
 
     protected int sizeHelper(BinaryNode<T> subtree) {
-        //Checks to make sure the current subtree node is actually part of the tree
+        return subtree == null ? 0 : subtree.getSize();
+    }
+
+    /**
+     * Finds the k-th smallest value in the tree, counting from 0, so that
+     * select(0) is the smallest value and select(size() - 1) the largest.
+     * Duplicate values each occupy their own position.
+     * @param k the 0-based position of the value in sorted order
+     * @return the value at position k
+     * @throws IndexOutOfBoundsException if k is negative or not less than size()
+     */
+    public T select(int k) throws IndexOutOfBoundsException {
+        if(k < 0 || k >= size()) {
+            throw new IndexOutOfBoundsException("k: " + k + ", size: " + size());
+        }
+
+        BinaryNode<T> current = root;
+
+        //The left subtree size tells us whether position k is to the left of, at, or to the right of the occurrences in the current node
+        while(true) {
+            int leftSize = sizeHelper(current.getLeft());
+
+            if(k < leftSize) {
+                current = current.getLeft();
+            } else if(k < leftSize + current.getCount()) {
+                return current.getData();
+            } else {
+                k -= leftSize + current.getCount();
+                current = current.getRight();
+            }
+        }
+    }
+
+    /**
+     * Counts the values in the tree that are strictly less than data.
+     * @param data the value to rank
+     * @return the number of values less than data, which is also the position
+     * select would return data at if it is in the tree
+     * @throws NullPointerException if data argument is null
+     */
+    public int rank(T data) throws NullPointerException {
+        if(data == null) {
+            throw new NullPointerException();
+        }
+
+        return rankHelper(data, false);
+    }
+
+    /**
+     * Counts the values in the tree that fall in the range [lo, hi], with each
+     * duplicate value being counted separately.
+     * @param lo the smallest value of the range
+     * @param hi the largest value of the range
+     * @return the number of values between lo and hi, or 0 when lo > hi
+     * @throws NullPointerException if either argument is null
+     */
+    public int countInRange(T lo, T hi) throws NullPointerException {
+        if(lo == null || hi == null) {
+            throw new NullPointerException();
+        }
+
+        if(compare(lo, hi) > 0) {
+            return 0;
+        }
+
+        return rankHelper(hi, true) - rankHelper(lo, false);
+    }
+
+    //Counts the values less than data (or less than or equal to data when inclusive) with a single walk from the root
+    protected int rankHelper(T data, boolean inclusive) {
+        int rank = 0;
+        BinaryNode<T> current = root;
+
+        while(current != null) {
+            int comparison = compare(data, current.getData());
+
+            if(comparison > 0 || (inclusive && comparison == 0)) {
+                //The current node and its whole left subtree come before data
+                rank += sizeHelper(current.getLeft()) + current.getCount();
+                current = current.getRight();
+            } else {
+                current = current.getLeft();
+            }
+        }
+
+        return rank;
+    }
+
+    /**
+     * Finds the number of nodes on the longest path from subtree down to a
+     * leaf, stepping through the subtree in-order with the parent references
+     * and keeping track of the depth, so no stack is needed.
+     * @return the height of the subtree, 0 when subtree is null
+     */
+    protected int heightHelper(BinaryNode<T> subtree) {
         if(subtree == null) {
             return 0;
-        } else {
-            //Adds the current node (1) with the left child's subtree size and the right child's subtree size
-            return 1 + sizeHelper(subtree.getLeft()) + sizeHelper(subtree.getRight());
         }
+
+        int height = 0;
+        int depth = 1;
+        BinaryNode<T> current = subtree;
+
+        while(current.getLeft() != null) {
+            current = current.getLeft();
+            ++depth;
+        }
+
+        //Same steps as nextInOrder, counting every move down and up
+        while(current != null) {
+            height = Math.max(height, depth);
+
+            if(current.getRight() != null) {
+                current = current.getRight();
+                ++depth;
+
+                while(current.getLeft() != null) {
+                    current = current.getLeft();
+                    ++depth;
+                }
+            } else {
+                while(current != subtree && current.isRightChild()) {
+                    current = current.getParent();
+                    --depth;
+                }
+
+                current = current == subtree ? null : current.getParent();
+                --depth;
+            }
+        }
+
+        return height;
+    }
+
+    //Checks that every node stores the correct size for its subtree, used to test the operations that restructure the tree
+    protected boolean hasConsistentSizes() {
+        for(BinaryNode<T> current = leftmost(root); current != null; current = nextInOrder(current, root)) {
+            if(current.getCount() < 1 || current.getSize() != current.getCount() + sizeHelper(current.getLeft()) + sizeHelper(current.getRight())) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * @return the left-most (smallest) node of the provided subtree, or null
+     * when the subtree is null
+     */
+    protected BinaryNode<T> leftmost(BinaryNode<T> subtree) {
+        return BinaryNode.firstInOrder(subtree);
+    }
+
+    /**
+     * Finds the in-order successor of node without leaving the provided
+     * subtree, following parent references instead of keeping a stack.
+     * @param node the current node, which must be inside subtree
+     * @param subtree the root of the subtree being walked
+     * @return the next node in-order, or null when node is the last node of
+     * the subtree
+     */
+    protected BinaryNode<T> nextInOrder(BinaryNode<T> node, BinaryNode<T> subtree) {
+        return BinaryNode.nextInOrder(node, subtree);
+    }
+
+    @Override
+    public boolean isEmpty() {
+        //Due to how the insert method works, if root is null then the newNode becomes root. Therefore we need only check if we have a root to know if the tree is empty
+        return root == null;
+    }
+
+    @Override
+    public void clear() {
+        //Can just set root to null to effectively reset the tree, garbage collector takes care of the other nodes
+        root = null;
     }
 
-    @Override
-    public boolean isEmpty() {
-        //Due to how the insert method works, if root is null then the newNode becomes root. Therefore we need only check if we have a root to know if the tree is empty
-        return root == null;
-    }
+    /**
+     * Replaces the contents of this tree with the provided values, building a
+     * perfectly balanced tree bottom-up instead of inserting them one by one.
+     * Sorted input is used as it is and takes O(n) time; any other input is
+     * copied and sorted first, in parallel when it is large. The provided
+     * array is never modified.
+     * @param values the values to load into the tree, duplicates included
+     * @throws NullPointerException if values or any of its elements is null
+     */
+    public void bulkLoad(T[] values) throws NullPointerException {
+        root = buildTree(sortedValues(values));
+    }
+
+    //Builds a balanced tree out of all of the sorted values, one node per value, or one counted node per distinct value in multiset mode
+    protected BinaryNode<T> buildTree(T[] sorted) {
+        BinaryNode<T> built;
+
+        if(multiset) {
+            //runStarts[r] is where the r-th run of equal values starts, with one extra entry for the end of the array
+            int[] runStarts = new int[sorted.length + 1];
+            int runs = 0;
+
+            for(int i = 0; i < sorted.length; ++i) {
+                if(i == 0 || compare(sorted[i - 1], sorted[i]) != 0) {
+                    runStarts[runs++] = i;
+                }
+            }
+
+            runStarts[runs] = sorted.length;
+            built = buildRuns(sorted, runStarts, 0, runs);
+        } else {
+            built = buildSubtree(sorted, 0, sorted.length);
+        }
+
+        if(built != null) {
+            built.setParent(null);
+        }
+
+        return built;
+    }
+
+    //Builds a balanced subtree out of the runs [lo, hi) of equal sorted values like buildBalanced, with one node per run counting its values
+    protected BinaryNode<T> buildRuns(T[] sorted, int[] runStarts, int lo, int hi) {
+        if(lo >= hi) {
+            return null;
+        }
+
+        int mid = (lo + hi) >>> 1;
+        BinaryNode<T> subtreeRoot = createNode(sorted[runStarts[mid]]);
+        BinaryNode<T> left = buildRuns(sorted, runStarts, lo, mid);
+        BinaryNode<T> right = buildRuns(sorted, runStarts, mid + 1, hi);
+
+        subtreeRoot.setLeft(left);
+        subtreeRoot.setRight(right);
+
+        if(left != null) {
+            left.setParent(subtreeRoot);
+        }
+
+        if(right != null) {
+            right.setParent(subtreeRoot);
+        }
+
+        subtreeRoot.setCount(runStarts[mid + 1] - runStarts[mid]);
+        subtreeRoot.setSize(runStarts[hi] - runStarts[lo]);
+        return subtreeRoot;
+    }
+
+    /**
+     * Returns the provided values in ascending order: the array itself when
+     * it is already sorted, which is checked in a single O(n) pass, and a
+     * sorted copy otherwise, sorted in parallel when it is large.
+     * @throws NullPointerException if values or any of its elements is null
+     */
+    protected T[] sortedValues(T[] values) throws NullPointerException {
+        boolean inOrder = true;
+
+        for(int i = 0; i < values.length; ++i) {
+            if(values[i] == null) {
+                throw new NullPointerException();
+            }
+
+            inOrder = inOrder && (i == 0 || compare(values[i - 1], values[i]) <= 0);
+        }
+
+        if(inOrder) {
+            return values;
+        }
+
+        T[] sorted = Arrays.copyOf(values, values.length);
+        //parallelSort falls back to a sequential sort for small arrays by itself, and to the natural order for a null comparator
+        Arrays.parallelSort(sorted, comparator);
+        return sorted;
+    }
+
+    //Builds a balanced subtree out of sorted[lo, hi) like buildBalanced, with one fork/join task per subtree down to the threshold when it is large
+    protected BinaryNode<T> buildSubtree(T[] sorted, int lo, int hi) {
+        return hi - lo > PARALLEL_THRESHOLD
+            ? ForkJoinPool.commonPool().invoke(new BuildTask(sorted, lo, hi))
+            : buildBalanced(sorted, lo, hi);
+    }
+
+    /**
+     * Replaces the contents of this tree with the provided values, exactly like
+     * bulkLoad(T[]).
+     * @param values the values to load into the tree, duplicates included
+     * @throws NullPointerException if values or any of its elements is null
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public void bulkLoad(Iterable<T> values) throws NullPointerException {
+        ArrayList<T> list = new ArrayList<>();
+
+        for(T value : values) {
+            list.add(value);
+        }
+
+        bulkLoad((T[]) list.toArray(new Comparable[list.size()]));
+    }
+
+    /**
+     * Replaces the contents of this tree with the provided sorted values,
+     * arranged in exactly the shape described by shape: two bits per node in
+     * pre-order, telling whether the node has a left and a right child. Takes
+     * O(n) time and no recursion, so even a chain is restored safely. Trees
+     * that keep their own balance override this to bulk load instead, and so
+     * does multiset mode, since the shape describes one node per value.
+     * @param sorted the values of the tree in sorted order
+     * @param shape the child bits of the nodes in pre-order
+     * @throws NullPointerException if sorted or any of its elements is null
+     * @throws IllegalArgumentException if shape does not describe a tree of
+     *         exactly sorted.length nodes, or if sorted is not in the order
+     *         of this tree
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public void restoreShape(T[] sorted, BitSet shape) throws NullPointerException, IllegalArgumentException {
+        if(multiset) {
+            bulkLoad(sorted);
+            return;
+        }
+
+        BinaryNode<T>[] preOrder = (BinaryNode<T>[]) new BinaryNode[sorted.length];
+        //Nodes whose right child still has to be attached, the most recent one gets the next right child
+        ArrayDeque<BinaryNode<T>> waitingForRight = new ArrayDeque<>();
+        BinaryNode<T> previous = null;
+        boolean previousHasLeft = false;
+
+        for(int i = 0; i < sorted.length; ++i) {
+            if(sorted[i] == null) {
+                throw new NullPointerException();
+            }
+
+            //Values out of order would be placed where searches can't find them
+            if(i > 0 && compare(sorted[i], sorted[i - 1]) < 0) {
+                throw new IllegalArgumentException("the values are not in sorted order at index " + i);
+            }
+
+            BinaryNode<T> node = createNode(sorted[i]);
+
+            //In pre-order, a node is the left child of the one before it if that one has a left child, and otherwise the right child of the latest node still waiting for one
+            if(previous != null && previousHasLeft) {
+                previous.setLeft(node);
+                node.setParent(previous);
+            } else if(i > 0) {
+                if(waitingForRight.isEmpty()) {
+                    throw new IllegalArgumentException("the shape has fewer nodes than values");
+                }
+
+                BinaryNode<T> parent = waitingForRight.pop();
+                parent.setRight(node);
+                node.setParent(parent);
+            }
+
+            previousHasLeft = shape.get(2 * i);
+
+            if(shape.get(2 * i + 1)) {
+                waitingForRight.push(node);
+            }
+
+            preOrder[i] = node;
+            previous = node;
+        }
+
+        if(previousHasLeft || !waitingForRight.isEmpty()) {
+            throw new IllegalArgumentException("the shape has more nodes than values");
+        }
+
+        root = sorted.length == 0 ? null : preOrder[0];
+
+        //The nodes were created with the values in pre-order, so move the values into in-order
+        int next = 0;
+
+        for(BinaryNode<T> current = leftmost(root); current != null; current = nextInOrder(current, null)) {
+            current.setData(sorted[next++]);
+        }
+
+        //Every child comes after its parent in pre-order, so sizes can be summed up in reverse
+        for(int i = preOrder.length - 1; i >= 0; --i) {
+            preOrder[i].updateSize();
+        }
+    }
+
+    /**
+     * Inserts a whole batch of values, duplicates included. The batch is
+     * sorted and then pushed down the tree in one pass: at every node the
+     * sorted keys are split into those that go left and those that go right,
+     * so a path shared by many keys is walked only once, and every empty slot
+     * that keys reach receives all of them at once as a balanced subtree.
+     * Large batches are split across the common fork/join pool. The provided
+     * array is never modified. In multiset mode, a batch into an empty tree
+     * is built in one pass as well, and other batches are inserted one value
+     * at a time, since a grafted subtree can't merge its values into the
+     * counts of nodes already in the tree.
+     * @param values the values to insert
+     * @throws NullPointerException if values or any of its elements is null
+     */
+    public void insertAll(T[] values) throws NullPointerException {
+        T[] sorted = sortedValues(values);
+
+        //Metrics count every insert with its depth, which only single inserts measure
+        if(metrics != null || (multiset && root != null)) {
+            for(T value : sorted) {
+                insert(value);
+            }
+
+            return;
+        }
+
+        if(root == null) {
+            root = buildTree(sorted);
+        } else if(sorted.length > PARALLEL_THRESHOLD) {
+            ForkJoinPool.commonPool().invoke(new InsertAllTask(root, sorted, 0, sorted.length));
+        } else {
+            new InsertAllTask(root, sorted, 0, sorted.length).compute();
+        }
+    }
+
+    /**
+     * Inserts a whole batch of values, exactly like insertAll(T[]).
+     * @param values the values to insert
+     * @throws NullPointerException if values or any of its elements is null
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public void insertAll(Collection<? extends T> values) throws NullPointerException {
+        insertAll((T[]) values.toArray(new Comparable[values.size()]));
+    }
+
+    /**
+     * Looks up a whole batch of keys at once, setting found[i] to whether
+     * keys[i] is in the tree. Like insertAll, the keys are sorted and pushed
+     * down the tree in one pass, so a path shared by many keys is walked only
+     * once, and large batches are split across the common fork/join pool.
+     * @param keys the values to look for
+     * @param found receives the results, in the same order as keys
+     * @throws NullPointerException if either array or any key is null
+     * @throws IllegalArgumentException if found is not as long as keys
+     */
+    public void containsAll(T[] keys, boolean[] found) throws NullPointerException, IllegalArgumentException {
+        if(found.length != keys.length) {
+            throw new IllegalArgumentException("found has length " + found.length + ", expected " + keys.length);
+        }
+
+        boolean inOrder = true;
+
+        for(int i = 0; i < keys.length; ++i) {
+            if(keys[i] == null) {
+                throw new NullPointerException();
+            }
+
+            inOrder = inOrder && (i == 0 || compare(keys[i - 1], keys[i]) <= 0);
+        }
+
+        T[] sorted = keys;
+        //positions[k] is where sorted[k] came from in keys, or null when keys was already sorted
+        int[] positions = null;
+
+        //The results go back in the order of keys, so sort the positions of the keys rather than the keys themselves
+        if(!inOrder) {
+            Integer[] order = new Integer[keys.length];
+
+            for(int i = 0; i < order.length; ++i) {
+                order[i] = i;
+            }
+
+            Arrays.parallelSort(order, (a, b) -> compare(keys[a], keys[b]));
+            positions = new int[keys.length];
+            sorted = Arrays.copyOf(keys, keys.length);
+
+            for(int k = 0; k < order.length; ++k) {
+                positions[k] = order[k];
+                sorted[k] = keys[order[k]];
+            }
+        }
+
+        Arrays.fill(found, false);
+
+        if(metrics != null) {
+            for(int i = 0; i < keys.length; ++i) {
+                found[i] = contains(keys[i]);
+            }
+        } else if(root != null && sorted.length > PARALLEL_THRESHOLD) {
+            ForkJoinPool.commonPool().invoke(new ContainsAllTask(root, sorted, 0, sorted.length, positions, found));
+        } else if(root != null) {
+            new ContainsAllTask(root, sorted, 0, sorted.length, positions, found).compute();
+        }
+    }
+
+    //Returns the first index in sorted[lo, hi) whose value is greater than data (inclusive false) or at least data (inclusive true), or hi
+    private int partitionIndex(T[] sorted, int lo, int hi, T data, boolean inclusive) {
+        while(lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            int comparison = compare(sorted[mid], data);
+
+            if(comparison > 0 || (inclusive && comparison == 0)) {
+                hi = mid;
+            } else {
+                lo = mid + 1;
+            }
+        }
+
+        return lo;
+    }
+
+    /**
+     * Builds a perfectly balanced subtree out of the sorted values in
+     * positions [lo, hi), with the middle value at its root, and wires up the
+     * parent references and subtree sizes of all of its nodes.
+     * @return the root of the new subtree, or null when the range is empty
+     */
+    protected BinaryNode<T> buildBalanced(T[] sorted, int lo, int hi) {
+        if(lo >= hi) {
+            return null;
+        }
+
+        //Recursion depth is only log2 of the range, because both halves are the same size
+        int mid = (lo + hi) >>> 1;
+        BinaryNode<T> subtreeRoot = createNode(sorted[mid]);
+        BinaryNode<T> left = buildBalanced(sorted, lo, mid);
+        BinaryNode<T> right = buildBalanced(sorted, mid + 1, hi);
+
+        subtreeRoot.setLeft(left);
+        subtreeRoot.setRight(right);
+
+        if(left != null) {
+            left.setParent(subtreeRoot);
+        }
+
+        if(right != null) {
+            right.setParent(subtreeRoot);
+        }
+
+        subtreeRoot.setSize(hi - lo);
+        return subtreeRoot;
+    }
+
+    /**
+     * @return the greatest value in the tree that is less than or equal to
+     * data, or null when there is no such value
+     * @throws NullPointerException if data argument is null
+     */
+    public T floor(T data) throws NullPointerException {
+        return dataOf(floorNode(data, true));
+    }
+
+    /**
+     * @return the least value in the tree that is greater than or equal to
+     * data, or null when there is no such value
+     * @throws NullPointerException if data argument is null
+     */
+    public T ceiling(T data) throws NullPointerException {
+        return dataOf(ceilingNode(data, true));
+    }
+
+    /**
+     * @return the greatest value in the tree that is strictly less than data,
+     * or null when there is no such value
+     * @throws NullPointerException if data argument is null
+     */
+    public T lower(T data) throws NullPointerException {
+        return dataOf(floorNode(data, false));
+    }
+
+    /**
+     * @return the least value in the tree that is strictly greater than data,
+     * or null when there is no such value
+     * @throws NullPointerException if data argument is null
+     */
+    public T higher(T data) throws NullPointerException {
+        return dataOf(ceilingNode(data, false));
+    }
+
+    /**
+     * @return the smallest value in the tree
+     * @throws NoSuchElementException if the tree is empty
+     */
+    public T first() throws NoSuchElementException {
+        if(root == null) {
+            throw new NoSuchElementException();
+        }
+
+        return leftmost(root).getData();
+    }
+
+    /**
+     * @return the largest value in the tree
+     * @throws NoSuchElementException if the tree is empty
+     */
+    public T last() throws NoSuchElementException {
+        if(root == null) {
+            throw new NoSuchElementException();
+        }
+
+        BinaryNode<T> current = root;
+
+        while(current.getRight() != null) {
+            current = current.getRight();
+        }
+
+        return current.getData();
+    }
+
+    /**
+     * Returns an iterator over the values in the range [lo, hi] in sorted
+     * order, duplicates included. Finding the first value takes O(height),
+     * and each further value is found by stepping to the in-order successor,
+     * so iterating over k values costs O(height + k) in total.
+     * @param lo the smallest value to return
+     * @param hi the largest value to return
+     * @return an iterator over the range, which is empty when lo > hi
+     * @throws NullPointerException if either argument is null
+     */
+    public Iterator<T> rangeIterator(T lo, T hi) throws NullPointerException {
+        if(lo == null || hi == null) {
+            throw new NullPointerException();
+        }
+
+        return new InOrderIterator(ceilingNode(lo, true), hi);
+    }
+
+    /**
+     * Returns a view of the values in the range [lo, hi]. Nothing is copied:
+     * every iteration over the view walks the tree as it is at that time.
+     * @param lo the smallest value of the view
+     * @param hi the largest value of the view
+     * @return the values between lo and hi, in sorted order
+     * @throws NullPointerException if either argument is null
+     */
+    public Iterable<T> subSet(T lo, T hi) throws NullPointerException {
+        if(lo == null || hi == null) {
+            throw new NullPointerException();
+        }
+
+        return () -> rangeIterator(lo, hi);
+    }
+
+    /**
+     * Finds the first node in sorted order whose value is greater than data,
+     * or greater than or equal to data when inclusive.
+     * @return that node, or null when there is none
+     * @throws NullPointerException if data argument is null
+     */
+    protected BinaryNode<T> ceilingNode(T data, boolean inclusive) throws NullPointerException {
+        if(data == null) {
+            throw new NullPointerException();
+        }
+
+        BinaryNode<T> candidate = null;
+        BinaryNode<T> current = root;
+
+        //A match becomes the candidate, and anything before it in order can only be in its left subtree
+        while(current != null) {
+            int comparison = compare(current.getData(), data);
+
+            if(comparison > 0 || (inclusive && comparison == 0)) {
+                candidate = current;
+                current = current.getLeft();
+            } else {
+                current = current.getRight();
+            }
+        }
+
+        return candidate;
+    }
+
+    /**
+     * Finds the last node in sorted order whose value is less than data, or
+     * less than or equal to data when inclusive.
+     * @return that node, or null when there is none
+     * @throws NullPointerException if data argument is null
+     */
+    protected BinaryNode<T> floorNode(T data, boolean inclusive) throws NullPointerException {
+        if(data == null) {
+            throw new NullPointerException();
+        }
+
+        BinaryNode<T> candidate = null;
+        BinaryNode<T> current = root;
+
+        while(current != null) {
+            int comparison = compare(current.getData(), data);
+
+            if(comparison < 0 || (inclusive && comparison == 0)) {
+                candidate = current;
+                current = current.getRight();
+            } else {
+                current = current.getLeft();
+            }
+        }
+
+        return candidate;
+    }
+
+    //Returns the value of node, or null when there is no node
+    private T dataOf(BinaryNode<T> node) {
+        return node == null ? null : node.getData();
+    }
+
+    /**
+     * Copies the values of this tree into an immutable FrozenTree, which packs
+     * them into a single array laid out for fast searching. Later changes to
+     * this tree don't affect the copy. Takes O(n) time.
+     * @return a read-only copy of this tree
+     * @throws IllegalArgumentException if the tree holds more than
+     *         FrozenTree.MAX_SIZE values
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public FrozenTree<T> freeze() {
+        T[] sorted = (T[]) new Comparable[FrozenTree.checkSize(size())];
+        int next = 0;
+
+        for(BinaryNode<T> current = leftmost(root); current != null; current = nextInOrder(current, null)) {
+            for(int i = 0; i < current.getCount(); ++i) {
+                sorted[next++] = current.getData();
+            }
+        }
+
+        return new FrozenTree<>(sorted, comparator);
+    }
+
+    /**
+     * Returns an iterator over the values of this tree in sorted order. It
+     * steps from node to node with the parent references, so it keeps no stack
+     * and allocates nothing per step. Its remove method removes the value last
+     * returned from the tree.
+     * @return an in-order iterator over the tree
+     */
+    @Override
+    public Iterator<T> iterator() {
+        return new InOrderIterator(leftmost(root));
+    }
+
+    /**
+     * Returns a spliterator over the values of this tree in sorted order. It
+     * knows its exact size, and splits at subtree boundaries: the first split
+     * hands off the root's left subtree, later splits hand off the left parts
+     * of the remaining subtrees.
+     * @return an in-order spliterator over the tree
+     */
+    @Override
+    public Spliterator<T> spliterator() {
+        return new InOrderSpliterator(leftmost(root), 0, null, 0, 0, size());
+    }
+
+    //Returns a sequential stream over the values of this tree in sorted order
+    public Stream<T> stream() {
+        return StreamSupport.stream(spliterator(), false);
+    }
+
+    //Returns a parallel stream over the values of this tree, split at subtree boundaries
+    public Stream<T> parallelStream() {
+        return StreamSupport.stream(spliterator(), true);
+    }
+
+    /**
+     * Finds the in-order position of the provided node in the tree, which is
+     * the number of values that come before its first occurrence, in
+     * O(height) using the subtree sizes of the nodes on the path to the root.
+     * @param node a node of this tree
+     * @return the 0-based position of node in sorted order
+     */
+    protected int positionOf(BinaryNode<T> node) {
+        int position = sizeHelper(node.getLeft());
+
+        //Every time we come up from a right child, the parent and its left subtree come before node
+        for(; node.getParent() != null; node = node.getParent()) {
+            if(node.isRightChild()) {
+                position += sizeHelper(node.getParent().getLeft()) + node.getParent().getCount();
+            }
+        }
+
+        return position;
+    }
+
+    /**
+     * Iterates over the nodes of the tree in-order, starting from a given node
+     * and using nextInOrder to step to the successor, optionally stopping
+     * after the last value that is not greater than an upper bound. The value
+     * of a node is returned once for every occurrence it holds.
+     */
+    protected class InOrderIterator implements Iterator<T> {
+        // the node whose value next() returns, or null when the iteration is over
+        protected BinaryNode<T> next;
+        // the number of occurrences in next that next() has yet to return
+        protected int remaining;
+        // the node whose value next() returned last, or null when remove() is not allowed
+        protected BinaryNode<T> lastReturned = null;
+        // the largest value to return, or null to iterate to the end of the tree
+        protected final T upperBound;
+
+        protected InOrderIterator(BinaryNode<T> first) {
+            this(first, null);
+        }
+
+        protected InOrderIterator(BinaryNode<T> first, T upperBound) {
+            this.upperBound = upperBound;
+            next = withinBound(first);
+            remaining = next == null ? 0 : next.getCount();
+        }
+
+        //Returns node, or null when it is past the upper bound
+        private BinaryNode<T> withinBound(BinaryNode<T> node) {
+            return node != null && upperBound != null && compare(node.getData(), upperBound) > 0 ? null : node;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        @Override
+        public T next() throws NoSuchElementException {
+            if(next == null) {
+                throw new NoSuchElementException();
+            }
+
+            lastReturned = next;
+
+            //With a null subtree, nextInOrder climbs all the way to the root when needed
+            if(--remaining == 0) {
+                next = withinBound(nextInOrder(next, null));
+                remaining = next == null ? 0 : next.getCount();
+            }
+
+            return lastReturned.getData();
+        }
+
+        //Removing a node never changes the identity of its successor, so the iteration carries on from next unaffected
+        @Override
+        public void remove() throws IllegalStateException {
+            if(lastReturned == null) {
+                throw new IllegalStateException();
+            }
+
+            //A node is only removed after its last occurrence was returned, so it is never next
+            if(lastReturned.getCount() > 1) {
+                changeCount(lastReturned, -1);
+            } else {
+                removeNode(lastReturned);
+            }
+
+            lastReturned = null;
+        }
+    }
+
+    /**
+     * Walks the values in positions [index, end) of the tree in-order, from
+     * the node current up to, but not including, the node fence (null for the
+     * end of the tree), returning the value of a node once for every
+     * occurrence it holds. Splitting follows java.util.TreeMap: the first
+     * split happens at the root, and later splits at the right child of
+     * current or the left child of fence, so each half is made of whole
+     * subtrees.
+     */
+    protected class InOrderSpliterator implements Spliterator<T> {
+        // the next node to visit, and the first node not to visit (null for the end of the tree)
+        protected BinaryNode<T> current;
+        // the number of occurrences in current that were already visited
+        protected int visited;
+        protected final BinaryNode<T> fence;
+        // 0 before the first split, 1 to split at the right child of current, -1 to split at the left child of fence
+        protected int side;
+        // positions of current and fence in sorted order, their difference is the exact size
+        protected int index;
+        protected final int end;
+
+        protected InOrderSpliterator(BinaryNode<T> current, int visited, BinaryNode<T> fence, int side, int index, int end) {
+            this.current = current;
+            this.visited = visited;
+            this.fence = fence;
+            this.side = side;
+            this.index = index;
+            this.end = end;
+        }
+
+        @Override
+        public Spliterator<T> trySplit() {
+            if(end - index < 2) {
+                return null;
+            }
+
+            BinaryNode<T> split = side == 0 ? root : side > 0 ? current.getRight() : fence != null ? fence.getLeft() : null;
+
+            if(split == null) {
+                return null;
+            }
+
+            int splitIndex = positionOf(split);
+
+            if(splitIndex <= index || splitIndex >= end) {
+                return null;
+            }
+
+            //Hand off [current, split) and keep [split, fence)
+            Spliterator<T> prefix = new InOrderSpliterator(current, visited, split, -1, index, splitIndex);
+            current = split;
+            visited = 0;
+            index = splitIndex;
+            side = 1;
+
+            return prefix;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super T> action) {
+            if(index >= end) {
+                return false;
+            }
+
+            action.accept(current.getData());
+            ++index;
+
+            if(++visited == current.getCount()) {
+                current = nextInOrder(current, null);
+                visited = 0;
+            }
+
+            return true;
+        }
+
+        @Override
+        public void forEachRemaining(Consumer<? super T> action) {
+            for(; index < end; ++index) {
+                action.accept(current.getData());
+
+                if(++visited == current.getCount()) {
+                    current = nextInOrder(current, null);
+                    visited = 0;
+                }
+            }
+        }
+
+        @Override
+        public long estimateSize() {
+            return end - index;
+        }
+
+        @Override
+        public int characteristics() {
+            return Spliterator.ORDERED | Spliterator.SORTED | Spliterator.NONNULL | Spliterator.SIZED | Spliterator.SUBSIZED;
+        }
+
+        //The values are sorted by the comparator of the tree, which is null for their natural order
+        @Override
+        public Comparator<? super T> getComparator() {
+            return comparator;
+        }
+    }
+
+    /**
+     * Builds the balanced subtree for the sorted values in positions [lo, hi)
+     * like buildBalanced, forking the two halves as separate tasks until they
+     * are no larger than PARALLEL_THRESHOLD.
+     */
+    @SuppressWarnings("serial")
+    protected class BuildTask extends RecursiveTask<BinaryNode<T>> {
+        protected final T[] sorted;
+        protected final int lo;
+        protected final int hi;
+
+        protected BuildTask(T[] sorted, int lo, int hi) {
+            this.sorted = sorted;
+            this.lo = lo;
+            this.hi = hi;
+        }
+
+        @Override
+        protected BinaryNode<T> compute() {
+            if(hi - lo <= PARALLEL_THRESHOLD) {
+                return buildBalanced(sorted, lo, hi);
+            }
+
+            int mid = (lo + hi) >>> 1;
+            BuildTask leftTask = new BuildTask(sorted, lo, mid);
+            leftTask.fork();
+            BinaryNode<T> right = new BuildTask(sorted, mid + 1, hi).compute();
+            BinaryNode<T> left = leftTask.join();
+
+            BinaryNode<T> subtreeRoot = createNode(sorted[mid]);
+            subtreeRoot.setLeft(left);
+            subtreeRoot.setRight(right);
+            left.setParent(subtreeRoot);
+            right.setParent(subtreeRoot);
+            subtreeRoot.setSize(hi - lo);
+
+            return subtreeRoot;
+        }
+    }
+
+    /**
+     * Inserts the sorted keys in [lo, hi) into the subtree for insertAll. Each
+     * task walks its keys down with a stack of further InsertAllTasks, one per
+     * subtree that still has keys headed into it. Where the keys split at a
+     * node, the smaller part is forked instead of pushed when it has more than
+     * PARALLEL_THRESHOLD keys. A task only changes the sizes and child slots
+     * of nodes in its own subtree, so tasks never touch the same node.
+     */
+    @SuppressWarnings("serial")
+    protected class InsertAllTask extends RecursiveAction {
+        protected final BinaryNode<T> subtree;
+        protected final T[] sorted;
+        protected final int lo;
+        protected final int hi;
+
+        protected InsertAllTask(BinaryNode<T> subtree, T[] sorted, int lo, int hi) {
+            this.subtree = subtree;
+            this.sorted = sorted;
+            this.lo = lo;
+            this.hi = hi;
+        }
+
+        @Override
+        protected void compute() {
+            ArrayList<InsertAllTask> forked = new ArrayList<>();
+            ArrayDeque<InsertAllTask> pending = new ArrayDeque<>();
+            pending.push(this);
+
+            while(!pending.isEmpty()) {
+                InsertAllTask task = pending.pop();
+                BinaryNode<T> node = task.subtree;
+                //Equal keys go left, like insertHelper sends them
+                int split = partitionIndex(sorted, task.lo, task.hi, node.getData(), false);
+
+                node.setSize(node.getSize() + task.hi - task.lo);
+                //Only the smaller side may be forked, so forked tasks nest at most log2 of the batch size deep
+                boolean forkLeft = split - task.lo < task.hi - split;
+                descend(node, true, task.lo, split, forkLeft, pending, forked);
+                descend(node, false, split, task.hi, !forkLeft, pending, forked);
+            }
+
+            for(InsertAllTask task : forked) {
+                task.join();
+            }
+        }
+
+        //Sends sorted[from, to) into one side of node: grafts them as a balanced subtree into an empty slot, or queues them for the child
+        private void descend(BinaryNode<T> node, boolean left, int from, int to, boolean mayFork,
+                ArrayDeque<InsertAllTask> pending, ArrayList<InsertAllTask> forked) {
+            if(from >= to) {
+                return;
+            }
+
+            BinaryNode<T> child = left ? node.getLeft() : node.getRight();
+
+            if(child == null) {
+                BinaryNode<T> grafted = buildSubtree(sorted, from, to);
+                grafted.setParent(node);
+
+                if(left) {
+                    node.setLeft(grafted);
+                } else {
+                    node.setRight(grafted);
+                }
+            } else if(to - from <= BATCH_SPLIT_MINIMUM) {
+                //Too few keys left to share much of the rest of the path, so each one walks down on its own
+                //Not through insertHelper, which a subclass may override to reshape the tree while other tasks are still linking nodes into it
+                for(int k = from; k < to; ++k) {
+                    linkBelow(createNode(sorted[k]), child);
+                }
+            } else if(mayFork && to - from > PARALLEL_THRESHOLD) {
+                InsertAllTask task = new InsertAllTask(child, sorted, from, to);
+                task.fork();
+                forked.add(task);
+            } else {
+                pending.push(new InsertAllTask(child, sorted, from, to));
+            }
+        }
+    }
+
+    /**
+     * Looks up the sorted keys in [lo, hi) in the subtree for containsAll,
+     * splitting them up and across the fork/join pool like InsertAllTask.
+     * Every key is looked up by exactly one task, which writes only its own
+     * entry of found.
+     */
+    @SuppressWarnings("serial")
+    protected class ContainsAllTask extends RecursiveAction {
+        protected final BinaryNode<T> subtree;
+        protected final T[] sorted;
+        protected final int lo;
+        protected final int hi;
+        protected final int[] positions;
+        protected final boolean[] found;
+
+        protected ContainsAllTask(BinaryNode<T> subtree, T[] sorted, int lo, int hi, int[] positions, boolean[] found) {
+            this.subtree = subtree;
+            this.sorted = sorted;
+            this.lo = lo;
+            this.hi = hi;
+            this.positions = positions;
+            this.found = found;
+        }
+
+        @Override
+        protected void compute() {
+            ArrayList<ContainsAllTask> forked = new ArrayList<>();
+            ArrayDeque<ContainsAllTask> pending = new ArrayDeque<>();
+            pending.push(this);
+
+            while(!pending.isEmpty()) {
+                ContainsAllTask task = pending.pop();
+                BinaryNode<T> node = task.subtree;
+                int less = partitionIndex(sorted, task.lo, task.hi, node.getData(), true);
+                int greater = partitionIndex(sorted, less, task.hi, node.getData(), false);
+
+                for(int k = less; k < greater; ++k) {
+                    found[positions == null ? k : positions[k]] = true;
+                }
+
+                //Keys headed into a missing child are not in the tree, and found is already false for them
+                boolean forkLeft = less - task.lo < task.hi - greater;
+                descend(node.getLeft(), task.lo, less, forkLeft, pending, forked);
+                descend(node.getRight(), greater, task.hi, !forkLeft, pending, forked);
+            }
+
+            for(ContainsAllTask task : forked) {
+                task.join();
+            }
+        }
+
+        //Queues the lookup of sorted[from, to) in child, forking it when it is large and allowed to
+        private void descend(BinaryNode<T> child, int from, int to, boolean mayFork,
+                ArrayDeque<ContainsAllTask> pending, ArrayList<ContainsAllTask> forked) {
+            if(child == null || from >= to) {
+                return;
+            }
+
+            if(to - from <= BATCH_SPLIT_MINIMUM) {
+                for(int k = from; k < to; ++k) {
+                    found[positions == null ? k : positions[k]] = lookupNode(sorted[k], child) != null;
+                }
+
+                return;
+            }
+
+            ContainsAllTask task = new ContainsAllTask(child, sorted, from, to, positions, found);
+
+            if(mayFork && to - from > PARALLEL_THRESHOLD) {
+                task.fork();
+                forked.add(task);
+            } else {
+                pending.push(task);
+            }
+        }
+    }
+
+    /**
+     * Performs the provided action on every value of the tree, in parallel on
+     * the common fork/join pool. Subtrees larger than PARALLEL_THRESHOLD
+     * (known in O(1) from their stored sizes) hand their smaller child
+     * subtree to a new task, and smaller ones are walked in-order by a single task. The values
+     * are visited in no particular order, and the tree must not be modified
+     * until this returns.
+     * @param action the action to perform on every value
+     * @throws NullPointerException if action is null
+     */
+    public void parallelForEach(Consumer<? super T> action) throws NullPointerException {
+        if(action == null) {
+            throw new NullPointerException();
+        }
+
+        if(root != null) {
+            ForkJoinPool.commonPool().invoke(new ForEachTask(root, action));
+        }
+    }
+
+    /**
+     * Combines all values of the tree into a single result, in parallel on the
+     * common fork/join pool, splitting the tree into subtrees the same way as
+     * parallelForEach. Values are accumulated and partial results combined in
+     * sorted order, so the combiner only has to be associative.
+     * @param identity the result for no values, which combiner must leave
+     *        any other result unchanged with
+     * @param accumulator folds one more value into a partial result
+     * @param combiner merges the partial results of two neighbouring ranges
+     * @return the result for all values in the tree
+     * @throws NullPointerException if accumulator or combiner is null
+     */
+    public <U> U parallelReduce(U identity, BiFunction<U, ? super T, U> accumulator, BinaryOperator<U> combiner) throws NullPointerException {
+        if(accumulator == null || combiner == null) {
+            throw new NullPointerException();
+        }
+
+        if(root == null) {
+            return identity;
+        }
+
+        return ForkJoinPool.commonPool().invoke(new ReduceTask<U>(root, identity, accumulator, combiner));
+    }
+
+    /**
+     * Visits a subtree for parallelForEach. While the subtree is large, the
+     * task visits its root, forks its smaller child subtree and moves on to
+     * the larger one itself. A forked subtree holds at most half of the
+     * values of the subtree it was forked from, so tasks nest at most log2(n)
+     * deep, and a chain leaning either way never deepens the stack.
+     */
+    @SuppressWarnings("serial")
+    protected class ForEachTask extends RecursiveAction {
+        protected final BinaryNode<T> subtree;
+        protected final Consumer<? super T> action;
+
+        protected ForEachTask(BinaryNode<T> subtree, Consumer<? super T> action) {
+            this.subtree = subtree;
+            this.action = action;
+        }
+
+        @Override
+        protected void compute() {
+            ArrayList<ForEachTask> forked = new ArrayList<>();
+            BinaryNode<T> current = subtree;
+
+            while(current != null && current.getSize() > PARALLEL_THRESHOLD) {
+                boolean goLeft = sizeHelper(current.getLeft()) >= sizeHelper(current.getRight());
+                BinaryNode<T> other = goLeft ? current.getRight() : current.getLeft();
+
+                if(other != null) {
+                    ForEachTask otherTask = new ForEachTask(other, action);
+                    otherTask.fork();
+                    forked.add(otherTask);
+                }
+
+                acceptOccurrences(current);
+                current = goLeft ? current.getLeft() : current.getRight();
+            }
+
+            for(BinaryNode<T> node = leftmost(current); node != null; node = nextInOrder(node, current)) {
+                acceptOccurrences(node);
+            }
+
+            for(ForEachTask otherTask : forked) {
+                otherTask.join();
+            }
+        }
+
+        //Performs the action once for every occurrence held by node
+        private void acceptOccurrences(BinaryNode<T> node) {
+            for(int i = 0; i < node.getCount(); ++i) {
+                action.accept(node.getData());
+            }
+        }
+    }
+
+    /**
+     * Reduces a subtree for parallelReduce, splitting it like ForEachTask.
+     * The path the task walked down is combined back from its bottom, with
+     * each node and its forked subtree put on the side they hold in sorted
+     * order, so every value is combined in sorted order.
+     */
+    @SuppressWarnings("serial")
+    protected class ReduceTask<U> extends RecursiveTask<U> {
+        protected final BinaryNode<T> subtree;
+        protected final U identity;
+        protected final BiFunction<U, ? super T, U> accumulator;
+        protected final BinaryOperator<U> combiner;
+
+        protected ReduceTask(BinaryNode<T> subtree, U identity, BiFunction<U, ? super T, U> accumulator, BinaryOperator<U> combiner) {
+            this.subtree = subtree;
+            this.identity = identity;
+            this.accumulator = accumulator;
+            this.combiner = combiner;
+        }
+
+        @Override
+        protected U compute() {
+            //The i-th node of the path, whether the path went on to its left, and the task reducing its other subtree (null when it has none)
+            ArrayList<BinaryNode<T>> path = new ArrayList<>();
+            ArrayList<Boolean> wentLeft = new ArrayList<>();
+            ArrayList<ReduceTask<U>> forked = new ArrayList<>();
+            BinaryNode<T> current = subtree;
+
+            while(current != null && current.getSize() > PARALLEL_THRESHOLD) {
+                boolean goLeft = sizeHelper(current.getLeft()) >= sizeHelper(current.getRight());
+                BinaryNode<T> other = goLeft ? current.getRight() : current.getLeft();
+                ReduceTask<U> otherTask = null;
+
+                if(other != null) {
+                    otherTask = new ReduceTask<>(other, identity, accumulator, combiner);
+                    otherTask.fork();
+                }
+
+                path.add(current);
+                wentLeft.add(goLeft);
+                forked.add(otherTask);
+                current = goLeft ? current.getLeft() : current.getRight();
+            }
+
+            U result = identity;
+
+            for(BinaryNode<T> node = leftmost(current); node != null; node = nextInOrder(node, current)) {
+                result = accumulateOccurrences(result, node);
+            }
+
+            for(int i = path.size() - 1; i >= 0; --i) {
+                U other = forked.get(i) == null ? identity : forked.get(i).join();
+                U node = accumulateOccurrences(identity, path.get(i));
+                result = wentLeft.get(i) ? combiner.apply(combiner.apply(result, node), other) : combiner.apply(combiner.apply(other, node), result);
+            }
+
+            return result;
+        }
+
+        //Folds every occurrence held by node into result
+        private U accumulateOccurrences(U result, BinaryNode<T> node) {
+            for(int i = 0; i < node.getCount(); ++i) {
+                result = accumulator.apply(result, node.getData());
+            }
 
-    @Override
-    public void clear() {
-        //Can just set root to null to effectively reset the tree, garbage collector takes care of the other nodes
-        root = null;
+            return result;
+        }
     }
 
     protected void printPreOrder() {
@@ -124,13 +1865,9 @@ public class BinarySearchTree<T extends Comparable<T>> implements SortedCollecti
     }
 
     protected void printPreOrderHelper(BinaryNode<T> subtree) {
-        if(subtree == null) {
-            return;
+        for(BinaryNode<T> current = subtree; current != null; current = BinaryNode.nextPreOrder(current, subtree)) {
+            System.out.print(current.getData() + ", ");
         }
-
-        printPreOrderHelper(subtree.getLeft());
-        System.out.print(subtree.getData() + ", ");
-        printPreOrderHelper(subtree.getRight());
     }
 
     public static void main(String[] args) {
@@ -139,6 +1876,17 @@ public class BinarySearchTree<T extends Comparable<T>> implements SortedCollecti
         System.out.println(tree.test1() ? "Test 1 passed" : "Test 1 failed");
         System.out.println(tree.test2() ? "Test 2 passed" : "Test 2 failed");
         System.out.println(tree.test3() ? "Test 3 passed" : "Test 3 failed");
+        System.out.println(tree.test4() ? "Test 4 passed" : "Test 4 failed");
+        System.out.println(tree.test5() ? "Test 5 passed" : "Test 5 failed");
+        System.out.println(tree.test6() ? "Test 6 passed" : "Test 6 failed");
+        System.out.println(tree.test7() ? "Test 7 passed" : "Test 7 failed");
+        System.out.println(tree.test8() ? "Test 8 passed" : "Test 8 failed");
+        System.out.println(tree.test9() ? "Test 9 passed" : "Test 9 failed");
+        System.out.println(tree.test10() ? "Test 10 passed" : "Test 10 failed");
+        System.out.println(tree.test11() ? "Test 11 passed" : "Test 11 failed");
+        System.out.println(tree.test12() ? "Test 12 passed" : "Test 12 failed");
+        System.out.println(tree.test13() ? "Test 13 passed" : "Test 13 failed");
+        System.out.println(tree.test14() ? "Test 14 passed" : "Test 14 failed");
     }
 
     //This test creates 100 integer trees with a random number of right and left nodes, and inserts them in a random sequence
@@ -403,4 +2151,613 @@ public class BinarySearchTree<T extends Comparable<T>> implements SortedCollecti
 
         return successful;
     }
+
+    //Builds a completely skewed tree (a chain of 30000 sorted integers), deep enough to overflow the call stack if insert, contains or size recursed once per level
+    public boolean test4() {
+        BinarySearchTree<Integer> intTree = new BinarySearchTree<>();
+
+        for(int i = 0; i < 30000; ++i) {
+            intTree.insert(i);
+        }
+
+        return intTree.contains(0) && intTree.contains(29999) && !intTree.contains(30000) && intTree.size() == 30000;
+    }
+
+    //Inserts random integers with duplicates and checks select, rank and countInRange against a sorted list of the same values
+    public boolean test5() {
+        BinarySearchTree<Integer> intTree = new BinarySearchTree<>();
+        ArrayList<Integer> sorted = new ArrayList<>();
+
+        for(int i = 0; i < 1000; ++i) {
+            int insertNum = (int) (Math.random() * 500d);
+            intTree.insert(insertNum);
+            sorted.add(insertNum);
+        }
+
+        sorted.sort(null);
+        boolean successful = intTree.size() == 1000 && intTree.hasConsistentSizes();
+
+        for(int k = 0; k < sorted.size(); ++k) {
+            successful = successful && intTree.select(k).equals(sorted.get(k));
+            //The rank of a value is the position of its first occurrence
+            successful = successful && intTree.rank(sorted.get(k)) == sorted.indexOf(sorted.get(k));
+        }
+
+        for(int i = 0; i < 100; ++i) {
+            int lo = (int) (Math.random() * 600d) - 50;
+            int hi = lo + (int) (Math.random() * 200d) - 20;
+            int expected = 0;
+
+            for(int j = 0; j < sorted.size(); ++j) {
+                if(sorted.get(j) >= lo && sorted.get(j) <= hi) {
+                    ++expected;
+                }
+            }
+
+            successful = successful && intTree.countInRange(lo, hi) == expected;
+        }
+
+        try {
+            intTree.select(1000);
+            successful = false;
+        } catch(IndexOutOfBoundsException e) {
+            //expected, there is no 1001st value
+        }
+
+        return successful;
+    }
+
+    //Inserts and removes random integers with duplicates, and checks contains, size and subtree sizes against a count of each value
+    public boolean test6() {
+        return removalTest(new BinarySearchTree<>());
+    }
+
+    //Runs random inserts, removes and removeAlls on the provided empty tree, also used to test the subclasses that override removeNode
+    protected static boolean removalTest(BinarySearchTree<Integer> intTree) {
+        int[] counts = new int[200];
+        int expectedSize = 0;
+        boolean successful = true;
+
+        for(int i = 0; i < 2000; ++i) {
+            int num = (int) (Math.random() * 200d);
+            double operation = Math.random();
+
+            if(operation < 0.6d) {
+                intTree.insert(num);
+                ++counts[num];
+                ++expectedSize;
+            } else if(operation < 0.95d) {
+                successful = successful && intTree.remove(num) == (counts[num] > 0);
+
+                if(counts[num] > 0) {
+                    --counts[num];
+                    --expectedSize;
+                }
+            } else {
+                successful = successful && intTree.removeAll(num) == counts[num];
+                expectedSize -= counts[num];
+                counts[num] = 0;
+            }
+        }
+
+        int distinct = 0;
+
+        for(int num = 0; num < 200; ++num) {
+            successful = successful && intTree.contains(num) == (counts[num] > 0) && intTree.count(num) == counts[num];
+            distinct += counts[num] > 0 ? 1 : 0;
+        }
+
+        //In multiset mode there is exactly one node per distinct value
+        int nodes = 0;
+
+        for(BinaryNode<Integer> current = intTree.leftmost(intTree.root); current != null; current = intTree.nextInOrder(current, null)) {
+            ++nodes;
+        }
+
+        successful = successful && (intTree.isMultiset() ? nodes == distinct : nodes == expectedSize);
+
+        return successful && intTree.size() == expectedSize && intTree.hasConsistentSizes()
+            && (intTree.root == null || intTree.root.getParent() == null);
+    }
+
+    //Bulk loads sorted and unsorted arrays and checks the contents, sizes and that the resulting trees accept further inserts
+    public boolean test7() {
+        Integer[] sorted = new Integer[100000];
+
+        for(int i = 0; i < sorted.length; ++i) {
+            sorted[i] = i / 2;
+        }
+
+        BinarySearchTree<Integer> intTree = BinarySearchTree.fromSorted(sorted);
+        boolean successful = intTree.size() == sorted.length && intTree.hasConsistentSizes();
+
+        for(int k = 0; k < sorted.length; k += 97) {
+            successful = successful && intTree.select(k).equals(sorted[k]);
+        }
+
+        //Shuffle a copy of the values, the shuffled array must come back sorted in the tree and stay untouched itself
+        Integer[] shuffled = Arrays.copyOf(sorted, sorted.length);
+
+        for(int i = shuffled.length - 1; i > 0; --i) {
+            int j = (int) (Math.random() * (i + 1));
+            Integer temp = shuffled[i];
+            shuffled[i] = shuffled[j];
+            shuffled[j] = temp;
+        }
+
+        Integer[] shuffledCopy = Arrays.copyOf(shuffled, shuffled.length);
+        intTree.bulkLoad(Arrays.asList(shuffled));
+        successful = successful && Arrays.equals(shuffled, shuffledCopy) && intTree.size() == sorted.length;
+
+        for(int k = 0; k < sorted.length; k += 89) {
+            successful = successful && intTree.select(k).equals(sorted[k]);
+        }
+
+        intTree.insert(-1);
+        intTree.remove(0);
+
+        return successful && intTree.select(0) == -1 && intTree.size() == sorted.length && intTree.hasConsistentSizes();
+    }
+
+    //Checks the iterator, its remove method and the sequential and parallel streams against select
+    public boolean test8() {
+        BinarySearchTree<Integer> intTree = new BinarySearchTree<>();
+        long expectedSum = 0;
+
+        for(int i = 0; i < 20000; ++i) {
+            int insertNum = (int) (Math.random() * 5000d);
+            intTree.insert(insertNum);
+            expectedSum += insertNum;
+        }
+
+        boolean successful = true;
+        int k = 0;
+
+        for(Integer value : intTree) {
+            successful = successful && value.equals(intTree.select(k++));
+        }
+
+        successful = successful && k == 20000;
+        successful = successful && intTree.stream().mapToLong(Integer::longValue).sum() == expectedSum;
+        successful = successful && intTree.parallelStream().mapToLong(Integer::longValue).sum() == expectedSum;
+        successful = successful && intTree.parallelStream().count() == 20000;
+
+        //A parallel stream still sees the values in order
+        Object[] inOrder = intTree.parallelStream().toArray();
+
+        for(int i = 1; i < inOrder.length; ++i) {
+            successful = successful && ((Integer) inOrder[i - 1]) <= ((Integer) inOrder[i]);
+        }
+
+        //The first split hands off exactly the left subtree of the root
+        Spliterator<Integer> spliterator = intTree.spliterator();
+        Spliterator<Integer> prefix = spliterator.trySplit();
+        successful = successful && prefix.estimateSize() == intTree.sizeHelper(intTree.root.getLeft());
+        successful = successful && prefix.estimateSize() + spliterator.estimateSize() == 20000;
+
+        //Remove every even value through the iterator
+        int removed = 0;
+
+        for(Iterator<Integer> it = intTree.iterator(); it.hasNext();) {
+            if(it.next() % 2 == 0) {
+                it.remove();
+                ++removed;
+            }
+        }
+
+        successful = successful && intTree.size() == 20000 - removed && intTree.hasConsistentSizes();
+        successful = successful && intTree.stream().allMatch(value -> value % 2 != 0);
+
+        return successful;
+    }
+
+    //Checks floor, ceiling, lower, higher, first, last and range iteration against a sorted list of the same values
+    public boolean test9() {
+        BinarySearchTree<Integer> intTree = new BinarySearchTree<>();
+        ArrayList<Integer> sorted = new ArrayList<>();
+        boolean successful = true;
+
+        try {
+            intTree.first();
+            successful = false;
+        } catch(NoSuchElementException e) {
+            //expected, an empty tree has no first value
+        }
+
+        for(int i = 0; i < 500; ++i) {
+            int insertNum = (int) (Math.random() * 1000d);
+            intTree.insert(insertNum);
+            sorted.add(insertNum);
+        }
+
+        sorted.sort(null);
+        successful = successful && intTree.first().equals(sorted.get(0)) && intTree.last().equals(sorted.get(499));
+
+        for(int query = -5; query <= 1005; ++query) {
+            Integer floor = null, ceiling = null, lower = null, higher = null;
+
+            for(Integer value : sorted) {
+                if(value <= query) {
+                    floor = value;
+                }
+
+                if(value < query) {
+                    lower = value;
+                }
+
+                if(value >= query && ceiling == null) {
+                    ceiling = value;
+                }
+
+                if(value > query && higher == null) {
+                    higher = value;
+                }
+            }
+
+            successful = successful && Objects.equals(intTree.floor(query), floor) && Objects.equals(intTree.lower(query), lower);
+            successful = successful && Objects.equals(intTree.ceiling(query), ceiling) && Objects.equals(intTree.higher(query), higher);
+        }
+
+        for(int i = 0; i < 100; ++i) {
+            int lo = (int) (Math.random() * 1100d) - 50;
+            int hi = lo + (int) (Math.random() * 300d) - 30;
+            ArrayList<Integer> expected = new ArrayList<>();
+            ArrayList<Integer> actual = new ArrayList<>();
+
+            for(Integer value : sorted) {
+                if(value >= lo && value <= hi) {
+                    expected.add(value);
+                }
+            }
+
+            for(Integer value : intTree.subSet(lo, hi)) {
+                actual.add(value);
+            }
+
+            successful = successful && expected.equals(actual) && actual.size() == intTree.countInRange(lo, hi);
+        }
+
+        return successful;
+    }
+
+    //Checks parallelForEach and parallelReduce on a random tree and a chain, and a parallel bulk load, against sequential results
+    public boolean test10() {
+        BinarySearchTree<Integer> intTree = new BinarySearchTree<>();
+        long expectedSum = 0;
+
+        for(int i = 0; i < 200000; ++i) {
+            int insertNum = (int) (Math.random() * 1000000d);
+            intTree.insert(insertNum);
+            expectedSum += insertNum;
+        }
+
+        LongAdder sum = new LongAdder();
+        intTree.parallelForEach(value -> sum.add(value));
+        boolean successful = sum.sum() == expectedSum;
+
+        //Reduce each range to {first value, last value, number of values, 1 if in order}; combining out of order would clear the flag
+        BinaryOperator<long[]> combiner = (a, b) -> a[2] == 0 ? b : b[2] == 0 ? a
+            : new long[] {a[0], b[1], a[2] + b[2], a[3] & b[3] & (a[1] <= b[0] ? 1 : 0)};
+        long[] reduced = intTree.parallelReduce(new long[] {0, 0, 0, 1},
+            (a, value) -> combiner.apply(a, new long[] {value, value, 1, 1}), combiner);
+        successful = successful && reduced[2] == 200000 && reduced[3] == 1;
+        successful = successful && reduced[0] == intTree.first() && reduced[1] == intTree.last();
+
+        //A chain is split along its spine without recursing once per node
+        BinarySearchTree<Integer> chain = new BinarySearchTree<>();
+        Integer[] sorted = new Integer[1000000];
+
+        for(int i = 0; i < sorted.length; ++i) {
+            sorted[i] = i;
+        }
+
+        chain.bulkLoad(sorted);
+        successful = successful && chain.size() == 1000000 && chain.hasConsistentSizes() && chain.heightHelper(chain.root) == 20;
+        successful = successful && chain.parallelReduce(0L, (a, value) -> a + value, Long::sum) == 999999L * 1000000L / 2;
+
+        for(int i = 0; i < 20000; ++i) {
+            chain.insert(1000000 + i);
+        }
+
+        reduced = chain.parallelReduce(new long[] {0, 0, 0, 1}, (a, value) -> combiner.apply(a, new long[] {value, value, 1, 1}), combiner);
+        successful = successful && reduced[2] == 1020000 && reduced[3] == 1 && reduced[1] == 1019999;
+
+        //A chain of left children, as descending inserts build it, is split along its spine the same way
+        BinarySearchTree<Integer> leftChain = new BinarySearchTree<>();
+        BitSet leftShape = new BitSet();
+
+        for(int i = 0; i < 99999; ++i) {
+            leftShape.set(2 * i);
+        }
+
+        leftChain.restoreShape(Arrays.copyOf(sorted, 100000), leftShape);
+
+        LongAdder leftSum = new LongAdder();
+        leftChain.parallelForEach(value -> leftSum.add(value));
+        reduced = leftChain.parallelReduce(new long[] {0, 0, 0, 1}, (a, value) -> combiner.apply(a, new long[] {value, value, 1, 1}), combiner);
+
+        return successful && leftSum.sum() == 99999L * 100000L / 2 && reduced[2] == 100000 && reduced[3] == 1 && reduced[0] == 0 && reduced[1] == 99999;
+    }
+
+    //Batches inserted and looked up at once, small and large, into empty and filled trees and into a chain, match single operations
+    public boolean test11() {
+        boolean successful = true;
+
+        for(int round = 0; round < 50; ++round) {
+            BinarySearchTree<Integer> batchTree = new BinarySearchTree<>();
+            BinarySearchTree<Integer> singleTree = new BinarySearchTree<>();
+            int batches = 1 + (int) (Math.random() * 4d);
+
+            for(int b = 0; b < batches; ++b) {
+                //Every few rounds a batch is large enough to be split across the fork/join pool
+                Integer[] batch = new Integer[round % 10 == 0 ? 20000 : (int) (Math.random() * 300d)];
+
+                for(int i = 0; i < batch.length; ++i) {
+                    batch[i] = (int) (Math.random() * 5000d);
+                }
+
+                batchTree.insertAll(batch);
+
+                for(Integer value : batch) {
+                    singleTree.insert(value);
+                }
+            }
+
+            Integer[] keys = new Integer[round % 10 == 0 ? 30000 : 500];
+
+            for(int i = 0; i < keys.length; ++i) {
+                keys[i] = (int) (Math.random() * 6000d) - 500;
+            }
+
+            boolean[] found = new boolean[keys.length];
+            batchTree.containsAll(keys, found);
+
+            for(int i = 0; i < keys.length; ++i) {
+                successful = successful && found[i] == singleTree.contains(keys[i]);
+            }
+
+            successful = successful && batchTree.size() == singleTree.size() && batchTree.hasConsistentSizes();
+
+            for(int k = 0; k < batchTree.size(); k += 1 + batchTree.size() / 50) {
+                successful = successful && batchTree.select(k).equals(singleTree.select(k));
+            }
+        }
+
+        //A sorted batch into a chain walks the whole spine without recursing once per node
+        BinarySearchTree<Integer> chain = new BinarySearchTree<>();
+
+        for(int i = 0; i < 50000; i += 2) {
+            chain.insert(i);
+        }
+
+        ArrayList<Integer> odd = new ArrayList<>();
+
+        for(int i = 1; i < 50000; i += 2) {
+            odd.add(i);
+        }
+
+        chain.insertAll(odd);
+        Integer[] all = new Integer[50000];
+
+        for(int i = 0; i < all.length; ++i) {
+            all[i] = i;
+        }
+
+        boolean[] found = new boolean[all.length];
+        chain.containsAll(all, found);
+
+        for(boolean value : found) {
+            successful = successful && value;
+        }
+
+        try {
+            chain.insertAll(new Integer[] {1, null, 3});
+            successful = false;
+        } catch(NullPointerException e) {
+            //expected, and nothing was inserted
+        }
+
+        return successful && chain.size() == 50000 && chain.hasConsistentSizes();
+    }
+
+    //The streaming renderers write every traversal order of every subtree in the usual format, also when it takes several chunks
+    public boolean test12() {
+        BinarySearchTree<Integer> intTree = new BinarySearchTree<>();
+
+        for(int value : new int[] {5, 3, 8, 1, 4, 9, 7, 2}) {
+            intTree.insert(value);
+        }
+
+        StringBuilder preOrder = new StringBuilder();
+        StringBuilder postOrder = new StringBuilder();
+        StringBuilder subtree = new StringBuilder();
+
+        try {
+            intTree.root.appendPreOrder(preOrder);
+            intTree.root.appendPostOrder(postOrder);
+            intTree.root.getLeft().appendPreOrder(subtree);
+        } catch(IOException e) {
+            return false;
+        }
+
+        boolean successful = intTree.root.toLevelOrderString().equals("[ 5, 3, 8, 1, 4, 7, 9, 2 ]");
+        successful = successful && intTree.root.toInOrderString().equals("[ 1, 2, 3, 4, 5, 7, 8, 9 ]");
+        successful = successful && preOrder.toString().equals("[ 5, 3, 1, 2, 4, 8, 7, 9 ]");
+        successful = successful && postOrder.toString().equals("[ 2, 1, 4, 3, 7, 9, 8, 5 ]");
+        successful = successful && subtree.toString().equals("[ 3, 1, 2, 4 ]");
+        successful = successful && intTree.root.getRight().toInOrderString().equals("[ 7, 8, 9 ]");
+
+        //A chain of 100000 values, written to a Writer in many chunks without a stack
+        BinarySearchTree<Integer> chain = new BinarySearchTree<>();
+        StringBuilder expected = new StringBuilder("[ ");
+
+        for(int i = 0; i < 100000; ++i) {
+            chain.insert(i);
+            expected.append(i).append(i == 99999 ? " ]" : ", ");
+        }
+
+        StringWriter inOrder = new StringWriter();
+        StringWriter chainPreOrder = new StringWriter();
+
+        try {
+            chain.root.appendInOrder(inOrder);
+            chain.root.appendPreOrder(chainPreOrder);
+        } catch(IOException e) {
+            return false;
+        }
+
+        successful = successful && inOrder.toString().equals(expected.toString()) && chainPreOrder.toString().equals(expected.toString())
+            && chain.root.toLevelOrderString().equals(expected.toString());
+
+        //A multiset node is written once per occurrence, like the iterator returns it, even when its occurrences take several chunks
+        BinarySearchTree<Integer> multisetTree = new BinarySearchTree<>(true);
+        StringBuilder expectedOccurrences = new StringBuilder("[ 1, 2, 2, 2");
+
+        for(int value : new int[] {2, 1, 2, 3, 2}) {
+            multisetTree.insert(value);
+        }
+
+        successful = successful && multisetTree.root.toInOrderString().equals("[ 1, 2, 2, 2, 3 ]");
+        successful = successful && multisetTree.root.toLevelOrderString().equals("[ 2, 2, 2, 1, 3 ]");
+
+        for(int i = 0; i < 5000; ++i) {
+            multisetTree.insert(3);
+            expectedOccurrences.append(", 3");
+        }
+
+        return successful && multisetTree.root.toInOrderString().equals(expectedOccurrences.append(", 3 ]").toString());
+    }
+
+    //A multiset tree keeps one node per distinct value, and select, rank, the iterators, the streams, the parallel operations and freeze see every occurrence
+    public boolean test13() {
+        BinarySearchTree<Integer> multisetTree = new BinarySearchTree<>(true);
+        BinarySearchTree<Integer> plainTree = new BinarySearchTree<>();
+        boolean successful = removalTest(new BinarySearchTree<>(true));
+
+        for(int i = 0; i < 20000; ++i) {
+            int value = (int) (Math.random() * 50d);
+            multisetTree.insert(value);
+            plainTree.insert(value);
+        }
+
+        //Only 50 distinct values, so the tree is made of at most 50 nodes however many inserts there were
+        successful = successful && multisetTree.size() == 20000 && multisetTree.heightHelper(multisetTree.root) <= 50;
+        successful = successful && multisetTree.hasConsistentSizes();
+
+        for(int value = -1; value <= 50; ++value) {
+            successful = successful && multisetTree.count(value) == plainTree.count(value);
+            successful = successful && multisetTree.rank(value) == plainTree.rank(value);
+        }
+
+        for(int k = 0; k < 20000; k += 97) {
+            successful = successful && multisetTree.select(k).equals(plainTree.select(k));
+        }
+
+        Iterator<Integer> plainValues = plainTree.iterator();
+
+        for(Integer value : multisetTree) {
+            successful = successful && value.equals(plainValues.next());
+        }
+
+        successful = successful && !plainValues.hasNext();
+        successful = successful && multisetTree.stream().count() == 20000;
+        successful = successful && multisetTree.parallelStream().mapToLong(Integer::longValue).sum() == plainTree.stream().mapToLong(Integer::longValue).sum();
+        successful = successful && multisetTree.parallelReduce(0L, (sum, value) -> sum + value, Long::sum).equals(plainTree.parallelReduce(0L, (sum, value) -> sum + value, Long::sum));
+
+        LongAdder visited = new LongAdder();
+        multisetTree.parallelForEach(value -> visited.increment());
+        successful = successful && visited.sum() == 20000 && multisetTree.freeze().size() == 20000;
+
+        //Removing through the iterator takes one occurrence at a time, and the iteration still sees every other one
+        int removed = 0;
+
+        for(Iterator<Integer> iterator = multisetTree.rangeIterator(10, 19); iterator.hasNext();) {
+            if(iterator.next() % 2 == 0) {
+                iterator.remove();
+                ++removed;
+            }
+        }
+
+        for(int value = 10; value < 20; value += 2) {
+            removed -= plainTree.count(value);
+        }
+
+        successful = successful && removed == 0;
+        successful = successful && multisetTree.size() == 20000 - plainTree.countInRange(10, 19) + plainTree.count(11) + plainTree.count(13)
+            + plainTree.count(15) + plainTree.count(17) + plainTree.count(19);
+        successful = successful && multisetTree.count(12) == 0 && multisetTree.count(13) == plainTree.count(13) && multisetTree.hasConsistentSizes();
+
+        //A bulk load puts each run of equal values into one node
+        Integer[] values = new Integer[10000];
+
+        for(int i = 0; i < values.length; ++i) {
+            values[i] = i / 100;
+        }
+
+        multisetTree.bulkLoad(values);
+        successful = successful && multisetTree.size() == 10000 && multisetTree.count(42) == 100 && multisetTree.select(4250) == 42;
+        successful = successful && multisetTree.heightHelper(multisetTree.root) == 7 && multisetTree.hasConsistentSizes();
+
+        multisetTree.insertAll(values);
+        successful = successful && multisetTree.size() == 20000 && multisetTree.count(99) == 200 && multisetTree.removeAll(99) == 200;
+
+        return successful && multisetTree.size() == 19800 && multisetTree.hasConsistentSizes();
+    }
+
+    //Trees ordered by a comparator or a key extractor search, rank, iterate and freeze in that order, and the natural-order fast paths handle the extreme values
+    public boolean test14() {
+        BinarySearchTree<Integer> reversed = new BinarySearchTree<>(Comparator.<Integer>reverseOrder());
+        boolean successful = reversed.comparator() != null && new BinarySearchTree<Integer>().comparator() == null;
+
+        for(int i = 0; i < 1000; ++i) {
+            reversed.insert((int) (Math.random() * 200d));
+        }
+
+        Integer previous = null;
+
+        for(Integer value : reversed) {
+            successful = successful && (previous == null || previous >= value);
+            previous = value;
+        }
+
+        for(int value = 0; value < 200; ++value) {
+            successful = successful && reversed.contains(value) == (reversed.count(value) > 0) && reversed.freeze().contains(value) == reversed.contains(value);
+        }
+
+        successful = successful && reversed.first() >= reversed.last() && reversed.select(0).equals(reversed.first());
+        successful = successful && reversed.spliterator().getComparator() == reversed.comparator() && reversed.hasConsistentSizes();
+
+        //Strings ordered by length, where values of the same length count as equal and share a node in multiset mode
+        BinarySearchTree<String> byLength = BinarySearchTree.byKey(String::length);
+        BinarySearchTree<String> lengthMultiset = new BinarySearchTree<>(Comparator.comparing(String::length), true);
+
+        for(String word : new String[] {"pear", "fig", "banana", "kiwi", "apple", "plum"}) {
+            byLength.insert(word);
+            lengthMultiset.insert(word);
+        }
+
+        successful = successful && byLength.first().equals("fig") && byLength.last().equals("banana") && byLength.count("abcd") == 3;
+        successful = successful && byLength.rank("12345") == 4 && byLength.contains("zzzzz") && !byLength.contains("zz");
+        successful = successful && lengthMultiset.size() == 6 && lengthMultiset.count("four") == 3 && lengthMultiset.heightHelper(lengthMultiset.root) <= 3;
+
+        //Natural order without a comparator, at the extremes where subtracting would overflow
+        BinarySearchTree<Integer> ints = new BinarySearchTree<>();
+        BinarySearchTree<Long> longs = new BinarySearchTree<>();
+        BinarySearchTree<String> strings = new BinarySearchTree<>();
+
+        for(int value : new int[] {0, Integer.MAX_VALUE, Integer.MIN_VALUE, -1, 1}) {
+            ints.insert(value);
+            longs.insert((long) value * Integer.MAX_VALUE);
+            strings.insert(Integer.toString(value));
+        }
+
+        longs.insert(Long.MIN_VALUE);
+        longs.insert(Long.MAX_VALUE);
+
+        successful = successful && ints.first() == Integer.MIN_VALUE && ints.last() == Integer.MAX_VALUE && ints.contains(Integer.MIN_VALUE) && !ints.contains(2);
+        successful = successful && longs.first() == Long.MIN_VALUE && longs.last() == Long.MAX_VALUE && longs.rank(0L) == 3 && longs.contains(-(long) Integer.MAX_VALUE);
+        successful = successful && strings.first().equals("-1") && strings.contains("2147483647") && !strings.contains("2");
+
+        return successful;
+    }
 }
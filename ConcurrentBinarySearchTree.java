@@ -0,0 +1,413 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * A thread-safe SortedCollection backed by a RedBlackTree. Writers (insert,
+ * remove and clear, together with the rotations they perform) take an
+ * exclusive lock, while readers (contains, size and range scans) run without
+ * any lock: they read the tree optimistically and then validate that no writer
+ * ran in the meantime, retrying if one did. Reads therefore never block each
+ * other or writers, and only fall back to a shared read lock when writers keep
+ * invalidating them.
+ *
+ * A reader that overlaps a writer may see the tree halfway through a rotation,
+ * so the optimistic walks never trust what they read: every walk has a step
+ * budget (a half-rotated pair of nodes can point at each other) and treats
+ * anything surprising as a failed validation.
+ */
+public class ConcurrentBinarySearchTree<T extends Comparable<T>> implements SortedCollection<T> {
+    //Number of optimistic attempts a read makes before it takes the read lock
+    private static final int OPTIMISTIC_ATTEMPTS = 3;
+    //A red-black tree of up to 2^31 values is at most 62 levels high, so no consistent root-to-leaf walk takes more steps
+    private static final int MAX_DESCENT_STEPS = 64;
+
+    //The tree holding the values, only ever modified while holding the write lock
+    protected final RedBlackTree<T> tree = new RedBlackTree<>();
+    //The lock whose stamps version the tree
+    protected final StampedLock lock = new StampedLock();
+
+    public ConcurrentBinarySearchTree() {
+    }
+
+    @Override
+    public void insert(T data) throws NullPointerException {
+        if(data == null) {
+            throw new NullPointerException();
+        }
+
+        long stamp = lock.writeLock();
+
+        try {
+            tree.insert(data);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Removes a single occurrence of data from the collection.
+     * @param data the value to remove
+     * @return true when an occurrence of data was removed
+     * @throws NullPointerException if data argument is null
+     */
+    public boolean remove(T data) throws NullPointerException {
+        if(data == null) {
+            throw new NullPointerException();
+        }
+
+        long stamp = lock.writeLock();
+
+        try {
+            return tree.remove(data);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public boolean contains(Comparable<T> data) throws NullPointerException {
+        if(data == null) {
+            throw new NullPointerException();
+        }
+
+        for(int attempt = 0; attempt < OPTIMISTIC_ATTEMPTS; ++attempt) {
+            long stamp = lock.tryOptimisticRead();
+
+            //A zero stamp means a writer holds the lock right now
+            if(stamp == 0L) {
+                Thread.onSpinWait();
+                continue;
+            }
+
+            try {
+                boolean found = optimisticContains(data);
+
+                if(lock.validate(stamp)) {
+                    return found;
+                }
+            } catch(RuntimeException e) {
+                //Only an exception thrown on a tree that no writer touched is real
+                if(lock.validate(stamp)) {
+                    throw e;
+                }
+            }
+        }
+
+        long stamp = lock.readLock();
+
+        try {
+            return tree.contains(data);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    //Searches for data without a lock, the result only counts if the caller's stamp still validates afterwards
+    private boolean optimisticContains(Comparable<T> data) {
+        BinaryNode<T> current = tree.root;
+
+        for(int steps = 0; current != null && steps <= MAX_DESCENT_STEPS; ++steps) {
+            T currentData = current.getData();
+
+            //Seen halfway through being linked in, the validation will fail
+            if(currentData == null) {
+                return false;
+            }
+
+            int comparison = data.compareTo(currentData);
+
+            if(comparison == 0) {
+                return true;
+            }
+
+            current = comparison < 0 ? current.getLeft() : current.getRight();
+        }
+
+        return false;
+    }
+
+    @Override
+    public int size() {
+        long stamp = lock.tryOptimisticRead();
+
+        if(stamp != 0L) {
+            BinaryNode<T> root = tree.root;
+            int size = root == null ? 0 : root.getSize();
+
+            if(lock.validate(stamp)) {
+                return size;
+            }
+        }
+
+        stamp = lock.readLock();
+
+        try {
+            return tree.size();
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    @Override
+    public void clear() {
+        long stamp = lock.writeLock();
+
+        try {
+            tree.clear();
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Collects the values in the range [lo, hi] in sorted order, duplicates
+     * included. The scan runs without a lock and is retried if a writer ran
+     * while it was collecting, so the returned list is a consistent snapshot
+     * of the range at a single point in time.
+     * @param lo the smallest value to collect
+     * @param hi the largest value to collect
+     * @return a new list with the values between lo and hi
+     * @throws NullPointerException if either argument is null
+     */
+    public List<T> range(T lo, T hi) throws NullPointerException {
+        if(lo == null || hi == null) {
+            throw new NullPointerException();
+        }
+
+        ArrayList<T> values = new ArrayList<>();
+
+        for(int attempt = 0; attempt < OPTIMISTIC_ATTEMPTS; ++attempt) {
+            long stamp = lock.tryOptimisticRead();
+
+            if(stamp == 0L) {
+                Thread.onSpinWait();
+                continue;
+            }
+
+            values.clear();
+
+            try {
+                optimisticRange(lo, hi, values);
+
+                if(lock.validate(stamp)) {
+                    return values;
+                }
+            } catch(RuntimeException e) {
+                if(lock.validate(stamp)) {
+                    throw e;
+                }
+            }
+        }
+
+        long stamp = lock.readLock();
+
+        try {
+            values.clear();
+
+            for(T value : tree.subSet(lo, hi)) {
+                values.add(value);
+            }
+
+            return values;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    //Collects the range without a lock, walking down to the first value and then from successor to successor within a step budget
+    private void optimisticRange(T lo, T hi, List<T> values) {
+        BinaryNode<T> root = tree.root;
+        //A consistent in-order walk crosses every edge at most twice
+        int budget = 2 * (root == null ? 0 : root.getSize()) + 2 * MAX_DESCENT_STEPS;
+
+        //Find the first node whose value is at least lo, like BinarySearchTree.ceilingNode
+        BinaryNode<T> current = null;
+
+        for(BinaryNode<T> node = root; node != null && --budget > 0;) {
+            T data = node.getData();
+
+            if(data == null) {
+                return;
+            }
+
+            if(data.compareTo(lo) >= 0) {
+                current = node;
+                node = node.getLeft();
+            } else {
+                node = node.getRight();
+            }
+        }
+
+        while(current != null && budget > 0) {
+            T data = current.getData();
+
+            if(data == null || data.compareTo(hi) > 0) {
+                return;
+            }
+
+            values.add(data);
+
+            //Step to the in-order successor, like BinarySearchTree.nextInOrder, spending budget on every move
+            if(current.getRight() != null) {
+                current = current.getRight();
+
+                while(current.getLeft() != null && --budget > 0) {
+                    current = current.getLeft();
+                }
+            } else {
+                BinaryNode<T> parent = current.getParent();
+
+                while(parent != null && parent.getRight() == current && --budget > 0) {
+                    current = parent;
+                    parent = current.getParent();
+                }
+
+                current = parent;
+            }
+
+            --budget;
+        }
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        ConcurrentBinarySearchTree<Integer> tree = new ConcurrentBinarySearchTree<>();
+
+        System.out.println(tree.test1() ? "Test 1 passed" : "Test 1 failed");
+        System.out.println(tree.test2() ? "Test 2 passed" : "Test 2 failed");
+        System.out.println(tree.test3() ? "Test 3 passed" : "Test 3 failed");
+    }
+
+    //Several writers insert disjoint keys while readers run; every key must be visible as soon as its insert returns
+    public boolean test1() throws InterruptedException {
+        ConcurrentBinarySearchTree<Integer> intTree = new ConcurrentBinarySearchTree<>();
+        AtomicBoolean successful = new AtomicBoolean(true);
+        Thread[] threads = new Thread[8];
+
+        for(int t = 0; t < threads.length; ++t) {
+            int offset = t;
+
+            threads[t] = new Thread(() -> {
+                for(int i = offset; i < 80000; i += threads.length) {
+                    intTree.insert(i);
+
+                    if(!intTree.contains(i)) {
+                        successful.set(false);
+                    }
+                }
+            });
+        }
+
+        for(Thread thread : threads) {
+            thread.start();
+        }
+
+        for(Thread thread : threads) {
+            thread.join();
+        }
+
+        boolean allThere = intTree.size() == 80000 && intTree.tree.isValidRedBlackTree();
+
+        for(int i = 0; i < 80000; ++i) {
+            allThere = allThere && intTree.contains(i);
+        }
+
+        return successful.get() && allThere;
+    }
+
+    //A writer inserts keys in order and publishes a counter after each insert returns; readers that saw the counter must find every key below it
+    public boolean test2() throws InterruptedException {
+        ConcurrentBinarySearchTree<Integer> intTree = new ConcurrentBinarySearchTree<>();
+        AtomicInteger inserted = new AtomicInteger(0);
+        AtomicBoolean successful = new AtomicBoolean(true);
+        Thread[] readers = new Thread[6];
+
+        for(int t = 0; t < readers.length; ++t) {
+            readers[t] = new Thread(() -> {
+                while(inserted.get() < 100000) {
+                    int seen = inserted.get();
+
+                    if(seen > 0 && !intTree.contains((int) (Math.random() * seen))) {
+                        successful.set(false);
+                    }
+
+                    //A key that is never inserted can't be found, however the tree is rotating
+                    if(intTree.contains(-1 - seen)) {
+                        successful.set(false);
+                    }
+                }
+            });
+            readers[t].start();
+        }
+
+        for(int i = 0; i < 100000; ++i) {
+            intTree.insert(i);
+            inserted.set(i + 1);
+        }
+
+        for(Thread reader : readers) {
+            reader.join();
+        }
+
+        return successful.get() && intTree.size() == 100000;
+    }
+
+    //Range scans racing with inserts and removes of the keys outside the range must always see exactly the fixed keys inside the range
+    public boolean test3() throws InterruptedException {
+        ConcurrentBinarySearchTree<Integer> intTree = new ConcurrentBinarySearchTree<>();
+        AtomicBoolean done = new AtomicBoolean(false);
+        AtomicBoolean successful = new AtomicBoolean(true);
+
+        //Even keys from 1000 to 1998 never change
+        for(int i = 1000; i < 2000; i += 2) {
+            intTree.insert(i);
+        }
+
+        Thread[] readers = new Thread[4];
+
+        for(int t = 0; t < readers.length; ++t) {
+            readers[t] = new Thread(() -> {
+                while(!done.get()) {
+                    List<Integer> values = intTree.range(1000, 1998);
+                    boolean matches = values.size() == 500;
+
+                    for(int i = 0; matches && i < values.size(); ++i) {
+                        matches = values.get(i) == 1000 + 2 * i;
+                    }
+
+                    if(!matches) {
+                        successful.set(false);
+                    }
+                }
+            });
+            readers[t].start();
+        }
+
+        //Churn the keys around the range, which rotates the nodes holding the fixed keys as well
+        for(int i = 0; i < 200000; ++i) {
+            int key = (int) (Math.random() * 1000d);
+            int outside = Math.random() < 0.5d ? key : 2000 + key;
+
+            if(Math.random() < 0.5d) {
+                intTree.insert(outside);
+            } else {
+                intTree.remove(outside);
+            }
+        }
+
+        done.set(true);
+
+        for(Thread reader : readers) {
+            reader.join();
+        }
+
+        return successful.get() && intTree.tree.isValidRedBlackTree();
+    }
+}
@@ -0,0 +1,146 @@
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+
+/**
+ * An immutable copy of an IntBinarySearchTree, made by freeze(), with its keys
+ * packed into a single int array in Eytzinger order, like FrozenTree. Since
+ * the keys are primitives stored in the array itself, a search touches no
+ * memory outside of it: the first levels share a few cache lines, and every
+ * level below costs at most one cache miss instead of the two (node, then
+ * boxed key) a tree of objects pays.
+ */
+public class FrozenIntTree {
+    //The keys in Eytzinger order, starting at index 1; index 0 is unused
+    private final int[] keys;
+    //The number of keys
+    private final int size;
+
+    /**
+     * Creates a frozen tree out of keys in sorted order.
+     * @param sorted the keys in ascending order, duplicates included
+     * @throws IllegalArgumentException if there are more than FrozenTree.MAX_SIZE keys
+     */
+    protected FrozenIntTree(int[] sorted) throws IllegalArgumentException {
+        size = FrozenTree.checkSize(sorted.length);
+        keys = new int[size + 1];
+
+        int next = 0;
+
+        for(int i = FrozenTree.firstIndex(size); i != 0; i = FrozenTree.nextIndex(i, size)) {
+            keys[i] = sorted[next++];
+        }
+    }
+
+    //Checks whether the key is stored in the tree one or more times
+    public boolean contains(int key) {
+        int i = 1;
+
+        //The condition becomes a 0 or 1 that is added to the index, so there is no branch to mispredict
+        while(i <= size) {
+            i = 2 * i + (keys[i] < key ? 1 : 0);
+        }
+
+        i >>= Integer.numberOfTrailingZeros(~i) + 1;
+
+        return i != 0 && keys[i] == key;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    //Returns an iterator over the keys in sorted order, duplicates included
+    public PrimitiveIterator.OfInt iterator() {
+        return new PrimitiveIterator.OfInt() {
+            private int next = FrozenTree.firstIndex(size);
+
+            @Override
+            public boolean hasNext() {
+                return next != 0;
+            }
+
+            @Override
+            public int nextInt() {
+                if(next == 0) {
+                    throw new NoSuchElementException();
+                }
+
+                int key = keys[next];
+                next = FrozenTree.nextIndex(next, size);
+                return key;
+            }
+        };
+    }
+
+    public static void main(String[] args) {
+        System.out.println(test1() ? "Test 1 passed" : "Test 1 failed");
+        System.out.println(test2() ? "Test 2 passed" : "Test 2 failed");
+    }
+
+    //Frozen copies of random trees find exactly the keys of the tree, including the extreme int values
+    public static boolean test1() {
+        boolean successful = true;
+
+        for(int n = 0; n < 200; ++n) {
+            IntBinarySearchTree intTree = new IntBinarySearchTree();
+            boolean[] inserted = new boolean[200];
+
+            for(int i = 0; i < n; ++i) {
+                int key = (int) (Math.random() * 200d);
+                intTree.insert(key);
+                inserted[key] = true;
+            }
+
+            if(n % 2 == 1) {
+                intTree.insert(Integer.MIN_VALUE);
+                intTree.insert(Integer.MAX_VALUE);
+            }
+
+            FrozenIntTree frozen = intTree.freeze();
+            successful = successful && frozen.size() == intTree.size();
+
+            for(int key = 0; key < 200; ++key) {
+                successful = successful && frozen.contains(key) == inserted[key];
+            }
+
+            successful = successful && frozen.contains(Integer.MIN_VALUE) == (n % 2 == 1);
+            successful = successful && frozen.contains(Integer.MAX_VALUE) == (n % 2 == 1);
+        }
+
+        return successful;
+    }
+
+    //Iteration returns the keys in sorted order with their duplicates
+    public static boolean test2() {
+        IntBinarySearchTree intTree = new IntBinarySearchTree();
+        int[] counts = new int[100];
+
+        for(int i = 0; i < 1000; ++i) {
+            int key = (int) (Math.random() * 100d);
+            intTree.insert(key);
+            ++counts[key];
+        }
+
+        FrozenIntTree frozen = intTree.freeze();
+        PrimitiveIterator.OfInt iterator = frozen.iterator();
+        boolean successful = true;
+        int previous = Integer.MIN_VALUE;
+
+        while(iterator.hasNext()) {
+            int key = iterator.nextInt();
+            successful = successful && key >= previous;
+            --counts[key];
+            previous = key;
+        }
+
+        for(int count : counts) {
+            successful = successful && count == 0;
+        }
+
+        return successful && frozen.size() == 1000;
+    }
+}
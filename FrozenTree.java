@@ -0,0 +1,260 @@
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * An immutable, array-packed copy of a BinarySearchTree, made by freeze(), for
+ * trees that are built once and then only searched. The values are stored in
+ * Eytzinger order: the root at index 1 and the children of index i at 2i and
+ * 2i + 1, like a binary heap. A search then needs no child references, only
+ * index arithmetic, and the top levels of the tree, which every search
+ * passes through, sit together at the front of the array where they stay in
+ * cache. Searching has no data-dependent branch: the comparison result is
+ * added to the index instead of choosing between two paths.
+ *
+ * Only the read side of SortedCollection is supported; insert and clear
+ * throw UnsupportedOperationException.
+ */
+public class FrozenTree<T extends Comparable<T>> implements SortedCollection<T>, Iterable<T> {
+    //The most values a frozen tree can hold; a search steps to index 2i + 1 below the last level, which must still fit in an int
+    static final int MAX_SIZE = (1 << 30) - 1;
+
+    //The values in Eytzinger order, starting at index 1; index 0 is unused
+    private final Object[] values;
+    //The number of values
+    private final int size;
+    //The order of the values, or null for their natural order
+    private final Comparator<? super T> comparator;
+
+    /**
+     * Creates a frozen tree out of values in sorted order.
+     * @param sorted the values in ascending order, duplicates included
+     * @throws IllegalArgumentException if there are more than MAX_SIZE values
+     */
+    protected FrozenTree(T[] sorted) throws IllegalArgumentException {
+        this(sorted, null);
+    }
+
+    /**
+     * Creates a frozen tree out of values sorted by comparator.
+     * @param sorted the values in the order of comparator, duplicates included
+     * @param comparator the order of the values, or null for their natural order
+     * @throws IllegalArgumentException if there are more than MAX_SIZE values
+     */
+    protected FrozenTree(T[] sorted, Comparator<? super T> comparator) throws IllegalArgumentException {
+        this.comparator = comparator;
+        size = checkSize(sorted.length);
+        values = new Object[size + 1];
+
+        //Visiting the indices in in-order hands them the sorted values in the right places
+        int next = 0;
+
+        for(int i = firstIndex(size); i != 0; i = nextIndex(i, size)) {
+            values[i] = sorted[next++];
+        }
+    }
+
+    @Override
+    public void insert(T data) throws UnsupportedOperationException {
+        throw new UnsupportedOperationException("a frozen tree can't be modified");
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public boolean contains(Comparable<T> data) throws NullPointerException {
+        if(data == null) {
+            throw new NullPointerException();
+        }
+
+        //Walk down to a leaf, going right (adding 1) whenever the value at i is less than data
+        int i = 1;
+
+        if(comparator == null) {
+            while(i <= size) {
+                i = 2 * i + (((T) values[i]).compareTo((T) data) >>> 31);
+            }
+        } else {
+            while(i <= size) {
+                i = 2 * i + (comparator.compare((T) values[i], (T) data) >>> 31);
+            }
+        }
+
+        //The last step to the left was at the smallest value that is at least data; undo every right step after it, and that step
+        i >>= Integer.numberOfTrailingZeros(~i) + 1;
+
+        return i != 0 && (comparator == null ? data.compareTo((T) values[i]) : comparator.compare((T) data, (T) values[i])) == 0;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    @Override
+    public void clear() throws UnsupportedOperationException {
+        throw new UnsupportedOperationException("a frozen tree can't be modified");
+    }
+
+    /**
+     * @return an iterator over the values in sorted order, duplicates
+     * included; it does not support remove
+     */
+    @Override
+    public Iterator<T> iterator() {
+        return new Iterator<T>() {
+            private int next = firstIndex(size);
+
+            @Override
+            public boolean hasNext() {
+                return next != 0;
+            }
+
+            @Override
+            @SuppressWarnings("unchecked")
+            public T next() {
+                if(next == 0) {
+                    throw new NoSuchElementException();
+                }
+
+                T value = (T) values[next];
+                next = nextIndex(next, size);
+                return value;
+            }
+        };
+    }
+
+    //Returns size, or throws an IllegalArgumentException when a frozen tree can't hold that many values
+    static int checkSize(int size) throws IllegalArgumentException {
+        if(size > MAX_SIZE) {
+            throw new IllegalArgumentException("a frozen tree holds at most " + MAX_SIZE + " values: " + size);
+        }
+
+        return size;
+    }
+
+    //Returns the index of the smallest value of a tree of size values, or 0 when it is empty
+    static int firstIndex(int size) {
+        if(size == 0) {
+            return 0;
+        }
+
+        int i = 1;
+
+        while(2 * i <= size) {
+            i *= 2;
+        }
+
+        return i;
+    }
+
+    //Returns the index after i in in-order, or 0 after the last one, like BinarySearchTree.nextInOrder
+    static int nextIndex(int i, int size) {
+        if(2 * i + 1 <= size) {
+            //Step into the right subtree and go left as far as possible
+            i = 2 * i + 1;
+
+            while(2 * i <= size) {
+                i *= 2;
+            }
+
+            return i;
+        }
+
+        //Climb while coming up from a right child, then one more step up
+        while((i & 1) == 1) {
+            i >>= 1;
+        }
+
+        return i >> 1;
+    }
+
+    public static void main(String[] args) {
+        System.out.println(test1() ? "Test 1 passed" : "Test 1 failed");
+        System.out.println(test2() ? "Test 2 passed" : "Test 2 failed");
+        System.out.println(test3() ? "Test 3 passed" : "Test 3 failed");
+    }
+
+    //Frozen copies of random trees of every small size find exactly the values of the tree, and iterate them in order
+    public static boolean test1() {
+        boolean successful = true;
+
+        for(int n = 0; n < 200; ++n) {
+            BinarySearchTree<Integer> intTree = new BinarySearchTree<>();
+
+            for(int i = 0; i < n; ++i) {
+                intTree.insert((int) (Math.random() * 100d));
+            }
+
+            FrozenTree<Integer> frozen = intTree.freeze();
+            successful = successful && frozen.size() == n && frozen.isEmpty() == (n == 0);
+
+            for(int key = -1; key <= 101; ++key) {
+                successful = successful && frozen.contains(key) == intTree.contains(key);
+            }
+
+            Iterator<Integer> expected = intTree.iterator();
+
+            for(Integer value : frozen) {
+                successful = successful && expected.hasNext() && value.equals(expected.next());
+            }
+
+            successful = successful && !expected.hasNext();
+        }
+
+        return successful;
+    }
+
+    //A frozen tree rejects changes and is not affected by later changes to its source tree
+    public static boolean test2() {
+        RedBlackTree<String> stringTree = new RedBlackTree<>();
+
+        for(int i = 0; i < 1000; ++i) {
+            stringTree.insert(Integer.toString(i, 36));
+        }
+
+        FrozenTree<String> frozen = stringTree.freeze();
+        stringTree.clear();
+        boolean successful = frozen.size() == 1000 && frozen.contains("rr") && !frozen.contains("zzz");
+
+        try {
+            frozen.insert("a");
+            successful = false;
+        } catch(UnsupportedOperationException e) {
+            //expected, frozen trees are read-only
+        }
+
+        try {
+            frozen.clear();
+            successful = false;
+        } catch(UnsupportedOperationException e) {
+            //expected, frozen trees are read-only
+        }
+
+        return successful && frozen.size() == 1000;
+    }
+
+    //Up to MAX_SIZE values, a search that always goes right still ends on a non-negative index, and larger trees are rejected
+    public static boolean test3() {
+        int i = 1;
+
+        while(i <= MAX_SIZE) {
+            i = 2 * i + 1;
+        }
+
+        boolean successful = i == Integer.MAX_VALUE && checkSize(MAX_SIZE) == MAX_SIZE;
+
+        try {
+            checkSize(MAX_SIZE + 1);
+            successful = false;
+        } catch(IllegalArgumentException e) {
+            //expected, the index of a search could overflow
+        }
+
+        return successful;
+    }
+}
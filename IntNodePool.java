@@ -0,0 +1,127 @@
+import java.util.Arrays;
+
+/**
+ * Storage for the nodes of a PooledIntBinarySearchTree. Instead of one object
+ * per node, every node is an int index into a single int array that holds the
+ * key, left child, right child and parent of each node next to each other, so
+ * a node's fields share a cache line and the garbage collector sees a single
+ * array no matter how many nodes are stored. Released nodes are kept on a
+ * free list, chained through their left child slot, and reused before the
+ * array grows.
+ */
+public class IntNodePool {
+
+    // the index used as a null reference
+    public static final int NIL = -1;
+
+    // number of ints used by a single node, and the offset of each field within a node
+    private static final int STRIDE = 4;
+    private static final int KEY = 0;
+    private static final int LEFT = 1;
+    private static final int RIGHT = 2;
+    private static final int PARENT = 3;
+
+    // the most nodes a pool can hold, since an array can't have many more than Integer.MAX_VALUE elements
+    public static final int MAX_CAPACITY = (Integer.MAX_VALUE - 8) / STRIDE;
+
+    // the fields of all nodes, STRIDE ints per node
+    private int[] slots;
+    // number of node indices handed out so far, including released ones
+    private int used;
+    // the most recently released node, or NIL when no released node is waiting for reuse
+    private int freeList;
+
+    /**
+     * Creates an empty pool with room for the provided number of nodes
+     * before the backing array has to grow.
+     * @param initialCapacity the number of nodes to allocate room for, at
+     *        most MAX_CAPACITY
+     */
+    public IntNodePool(int initialCapacity) {
+        slots = new int[Math.max(1, Math.min(initialCapacity, MAX_CAPACITY)) * STRIDE];
+        used = 0;
+        freeList = NIL;
+    }
+
+    /**
+     * Hands out a node holding key with no parent and no children, reusing a
+     * released node when there is one.
+     * @param key the key the new node stores
+     * @return the index of the new node
+     * @throws IllegalStateException if the pool already holds MAX_CAPACITY
+     *         nodes and none of them is released
+     */
+    public int allocate(int key) throws IllegalStateException {
+        int node;
+
+        if(freeList != NIL) {
+            node = freeList;
+            freeList = slots[node * STRIDE + LEFT];
+        } else {
+            if(used == capacity()) {
+                grow();
+            }
+
+            node = used++;
+        }
+
+        int base = node * STRIDE;
+        slots[base + KEY] = key;
+        slots[base + LEFT] = NIL;
+        slots[base + RIGHT] = NIL;
+        slots[base + PARENT] = NIL;
+
+        return node;
+    }
+
+    //Grows the backing array by half, like ArrayList, in long arithmetic so a pool of hundreds of millions of nodes can't overflow the new length
+    private void grow() throws IllegalStateException {
+        if(used >= MAX_CAPACITY) {
+            throw new IllegalStateException("the pool is full, it holds " + MAX_CAPACITY + " nodes");
+        }
+
+        long newCapacity = Math.min(MAX_CAPACITY, Math.max((long) capacity() * 3 / 2, (long) used + 1));
+        slots = Arrays.copyOf(slots, (int) newCapacity * STRIDE);
+    }
+
+    /**
+     * Puts a node that is no longer linked into the tree on the free list.
+     * @param node the index of the node to release
+     */
+    public void release(int node) {
+        slots[node * STRIDE + LEFT] = freeList;
+        freeList = node;
+    }
+
+    /**
+     * Releases every node at once. The backing array is kept for reuse.
+     */
+    public void clear() {
+        used = 0;
+        freeList = NIL;
+    }
+
+    public int getKey(int node) { return slots[node * STRIDE + KEY]; }
+
+    public int getLeft(int node) { return slots[node * STRIDE + LEFT]; }
+
+    public int getRight(int node) { return slots[node * STRIDE + RIGHT]; }
+
+    public int getParent(int node) { return slots[node * STRIDE + PARENT]; }
+
+    public void setKey(int node, int key) { slots[node * STRIDE + KEY] = key; }
+
+    public void setLeft(int node, int left) { slots[node * STRIDE + LEFT] = left; }
+
+    public void setRight(int node, int right) { slots[node * STRIDE + RIGHT] = right; }
+
+    public void setParent(int node, int parent) { slots[node * STRIDE + PARENT] = parent; }
+
+    /**
+     * @return the number of nodes the backing array can hold before it grows
+     */
+    public int capacity() {
+        return slots.length / STRIDE;
+    }
+
+}
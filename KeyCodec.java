@@ -0,0 +1,86 @@
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Converts the values of a tree to and from bytes, for TreeSnapshot. Codecs
+ * for Integer, Long, Double and String values are provided.
+ */
+public interface KeyCodec<T> {
+
+    /**
+     * @return the number of bytes write will use for key
+     */
+    public int encodedSize(T key);
+
+    /**
+     * @return the fewest bytes write uses for any value, at least 1, which
+     * lets a reader reject a count of values too large for the file to hold
+     */
+    public default int minEncodedSize() { return 1; }
+
+    /**
+     * Writes key at the position of out, advancing the position past it.
+     * @param key the value to write
+     * @param out a buffer with at least encodedSize(key) bytes remaining
+     */
+    public void write(T key, ByteBuffer out);
+
+    /**
+     * Reads a value written by write from the position of in, advancing the
+     * position past it.
+     * @param in the buffer to read from
+     * @return the value that was read
+     * @throws IllegalArgumentException if the bytes at in can't have been
+     *         written by write
+     */
+    public T read(ByteBuffer in) throws IllegalArgumentException;
+
+    //4 bytes per value
+    public static final KeyCodec<Integer> INTEGER = new KeyCodec<>() {
+        public int encodedSize(Integer key) { return Integer.BYTES; }
+        public int minEncodedSize() { return Integer.BYTES; }
+        public void write(Integer key, ByteBuffer out) { out.putInt(key); }
+        public Integer read(ByteBuffer in) { return in.getInt(); }
+    };
+
+    //8 bytes per value
+    public static final KeyCodec<Long> LONG = new KeyCodec<>() {
+        public int encodedSize(Long key) { return Long.BYTES; }
+        public int minEncodedSize() { return Long.BYTES; }
+        public void write(Long key, ByteBuffer out) { out.putLong(key); }
+        public Long read(ByteBuffer in) { return in.getLong(); }
+    };
+
+    //8 bytes per value
+    public static final KeyCodec<Double> DOUBLE = new KeyCodec<>() {
+        public int encodedSize(Double key) { return Double.BYTES; }
+        public int minEncodedSize() { return Double.BYTES; }
+        public void write(Double key, ByteBuffer out) { out.putDouble(key); }
+        public Double read(ByteBuffer in) { return in.getDouble(); }
+    };
+
+    //The length of the UTF-8 bytes as an int, followed by the bytes
+    public static final KeyCodec<String> STRING = new KeyCodec<>() {
+        public int encodedSize(String key) { return Integer.BYTES + key.getBytes(StandardCharsets.UTF_8).length; }
+        public int minEncodedSize() { return Integer.BYTES; }
+
+        public void write(String key, ByteBuffer out) {
+            byte[] bytes = key.getBytes(StandardCharsets.UTF_8);
+            out.putInt(bytes.length);
+            out.put(bytes);
+        }
+
+        public String read(ByteBuffer in) throws IllegalArgumentException {
+            int length = in.getInt();
+
+            //The length comes from the file, so it is checked before an array of that length is allocated
+            if(length < 0 || length > in.remaining() || length > TreeSnapshot.MAX_VALUE_BYTES) {
+                throw new IllegalArgumentException("string length out of range: " + length);
+            }
+
+            byte[] bytes = new byte[length];
+            in.get(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+    };
+}
@@ -0,0 +1,206 @@
+/**
+ * A binary search tree specialized for long keys. Each node stores its key
+ * inline as a primitive, so inserting and searching never box a value into a
+ * Long and every comparison is a primitive comparison instead of a call to
+ * compareTo. Like BinarySearchTree, duplicate keys are stored in the left
+ * subtree, and like BSTRotation, it supports rotating a node above its parent.
+ */
+public class LongBinarySearchTree {
+
+    /**
+     * A doubly linked tree node holding a single primitive long key.
+     */
+    protected static class Node {
+        // the key stored in this node
+        protected long key;
+        // references to the node's parent and children
+        protected Node parent = null;
+        protected Node left = null;
+        protected Node right = null;
+
+        protected Node(long key) { this.key = key; }
+    }
+
+    //The root node of this tree
+    protected Node root;
+    //The number of keys in this tree, kept in the tree instead of in every node
+    protected int size;
+
+    //Creates a LongBinarySearchTree with a null root
+    public LongBinarySearchTree() {
+        root = null;
+        size = 0;
+    }
+
+    //Inserts the key into the tree, duplicates included
+    public void insert(long key) {
+        Node newNode = new Node(key);
+        ++size;
+
+        if(root == null) {
+            root = newNode;
+            return;
+        }
+
+        insertHelper(newNode, root);
+    }
+
+    //Walks down from subtree to the empty child slot where newNode belongs, sending equal keys to the left
+    protected void insertHelper(Node newNode, Node subtree) {
+        while(subtree != null) {
+            if(newNode.key <= subtree.key) {
+                if(subtree.left == null) {
+                    subtree.left = newNode;
+                    newNode.parent = subtree;
+                    return;
+                }
+
+                subtree = subtree.left;
+            } else {
+                if(subtree.right == null) {
+                    subtree.right = newNode;
+                    newNode.parent = subtree;
+                    return;
+                }
+
+                subtree = subtree.right;
+            }
+        }
+    }
+
+    //Checks whether the key is stored in the tree one or more times
+    public boolean contains(long key) {
+        Node current = root;
+
+        while(current != null) {
+            if(key == current.key) {
+                return true;
+            }
+
+            current = key < current.key ? current.left : current.right;
+        }
+
+        return false;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return root == null;
+    }
+
+    public void clear() {
+        root = null;
+        size = 0;
+    }
+
+    /**
+     * Performs the rotation operation on the provided nodes within this tree,
+     * exactly like BSTRotation.rotate: a right rotation when child is the left
+     * child of parent, and a left rotation when it is the right child.
+     *
+     * @param child is the node being rotated from child to parent position
+     * @param parent is the node being rotated from parent to child position
+     * @throws NullPointerException when either passed argument is null
+     * @throws IllegalArgumentException when the provided child and parent
+     *     nodes are not initially (pre-rotation) related that way
+     */
+    protected void rotate(Node child, Node parent) throws NullPointerException, IllegalArgumentException {
+        if(child == null || parent == null) {
+            throw new NullPointerException();
+        } else if(child.parent != parent || (parent.left != child && parent.right != child)) {
+            throw new IllegalArgumentException();
+        }
+
+        //Stitches child into the place parent held under its own parent, or at the root
+        if(parent == root) {
+            root = child;
+        } else if(parent.parent.left == parent) {
+            parent.parent.left = child;
+        } else {
+            parent.parent.right = child;
+        }
+
+        //The inner subtree of child moves across to parent
+        if(parent.left == child) {
+            parent.left = child.right;
+
+            if(child.right != null) {
+                child.right.parent = parent;
+            }
+
+            child.right = parent;
+        } else {
+            parent.right = child.left;
+
+            if(child.left != null) {
+                child.left.parent = parent;
+            }
+
+            child.left = parent;
+        }
+
+        child.parent = parent.parent;
+        parent.parent = child;
+    }
+
+    public static void main(String[] args) {
+        LongBinarySearchTree tree = new LongBinarySearchTree();
+
+        System.out.println(tree.test1() ? "Test 1 passed" : "Test 1 failed");
+        System.out.println(tree.test2() ? "Test 2 passed" : "Test 2 failed");
+    }
+
+    //Inserts random keys with duplicates and checks contains, size and clear
+    public boolean test1() {
+        LongBinarySearchTree longTree = new LongBinarySearchTree();
+        boolean[] inserted = new boolean[2000];
+        boolean successful = true;
+
+        for(int i = 0; i < 1000; ++i) {
+            int key = (int) (Math.random() * 2000d) - 1000;
+            //Spread the keys beyond the int range
+            longTree.insert(key * 10000000000L);
+            inserted[key + 1000] = true;
+        }
+
+        for(int key = -1000; key < 1000; ++key) {
+            successful = successful && longTree.contains(key * 10000000000L) == inserted[key + 1000];
+        }
+
+        successful = successful && longTree.size() == 1000;
+        longTree.clear();
+
+        return successful && longTree.size() == 0 && !longTree.contains(0);
+    }
+
+    //Rotates the last node of a sorted chain up to the root, like BSTRotation.test1
+    public boolean test2() {
+        LongBinarySearchTree longTree = new LongBinarySearchTree();
+        Node[] nodes = new Node[100];
+        boolean successful = true;
+
+        for(int i = 0; i < 100; ++i) {
+            longTree.insert(i);
+        }
+
+        nodes[0] = longTree.root;
+
+        for(int i = 1; i < 100; ++i) {
+            nodes[i] = nodes[i - 1].right;
+        }
+
+        for(int i = 99; i > 0; --i) {
+            longTree.rotate(nodes[99], nodes[i - 1]);
+            successful = successful && nodes[i - 1].parent == nodes[99];
+        }
+
+        for(int i = 0; i < 100; ++i) {
+            successful = successful && longTree.contains(i);
+        }
+
+        return successful && longTree.root == nodes[99];
+    }
+}
@@ -0,0 +1,461 @@
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A sorted collection whose every version stays readable after it changes.
+ * The nodes never change once built: an insert or remove copies only the
+ * nodes on the path from the root down to the change, and shares every other
+ * subtree with the version before. snapshot() hands out the current version in
+ * O(1), as an immutable SortedCollection that readers can keep using without
+ * any lock while writers go on changing the tree, and versions nobody holds
+ * any more are reclaimed by the garbage collector.
+ *
+ * The tree is kept balanced like an AVLTree, with the rotations of
+ * BSTRotation.rotate rebuilt to create new nodes instead of relinking old
+ * ones, so every path, and every copy, stays O(log n) long. Writers are
+ * serialized with a lock; readers only read the volatile root.
+ */
+public class PersistentTree<T extends Comparable<T>> implements SortedCollection<T>, Iterable<T> {
+
+    /**
+     * An immutable tree node. Without parent references, a subtree can be
+     * shared by any number of versions.
+     */
+    protected static final class Node<T> {
+        protected final T data;
+        protected final Node<T> left;
+        protected final Node<T> right;
+        // number of levels of the subtree rooted at this node, 1 for a leaf
+        protected final int height;
+        // number of nodes in the subtree rooted at this node, including this node
+        protected final int size;
+
+        protected Node(T data, Node<T> left, Node<T> right) {
+            this.data = data;
+            this.left = left;
+            this.right = right;
+            this.height = 1 + Math.max(heightOf(left), heightOf(right));
+            this.size = 1 + sizeOf(left) + sizeOf(right);
+        }
+    }
+
+    //The root of the current version, replaced as a whole by every change
+    protected volatile Node<T> root;
+
+    //Creates an empty PersistentTree
+    public PersistentTree() {
+        root = null;
+    }
+
+    @Override
+    public synchronized void insert(T data) throws NullPointerException {
+        if(data == null) {
+            throw new NullPointerException();
+        }
+
+        root = insertHelper(root, data);
+    }
+
+    //Returns a copy of subtree with data inserted, sending equal values to the left like BinarySearchTree.insertHelper
+    protected Node<T> insertHelper(Node<T> subtree, T data) {
+        if(subtree == null) {
+            return new Node<>(data, null, null);
+        }
+
+        if(data.compareTo(subtree.data) <= 0) {
+            return balance(subtree.data, insertHelper(subtree.left, data), subtree.right);
+        } else {
+            return balance(subtree.data, subtree.left, insertHelper(subtree.right, data));
+        }
+    }
+
+    /**
+     * Removes a single occurrence of data from the tree. Versions handed out
+     * before still hold it.
+     * @param data the value to remove
+     * @return true when an occurrence of data was removed
+     * @throws NullPointerException if data argument is null
+     */
+    public synchronized boolean remove(T data) throws NullPointerException {
+        if(data == null) {
+            throw new NullPointerException();
+        }
+
+        Node<T> newRoot = removeHelper(root, data);
+
+        if(newRoot == root) {
+            return false;
+        }
+
+        root = newRoot;
+        return true;
+    }
+
+    //Returns a copy of subtree without one occurrence of data, or subtree itself when data is not in it
+    protected Node<T> removeHelper(Node<T> subtree, T data) {
+        if(subtree == null) {
+            return null;
+        }
+
+        int comparison = data.compareTo(subtree.data);
+
+        if(comparison < 0) {
+            Node<T> left = removeHelper(subtree.left, data);
+            return left == subtree.left ? subtree : balance(subtree.data, left, subtree.right);
+        } else if(comparison > 0) {
+            Node<T> right = removeHelper(subtree.right, data);
+            return right == subtree.right ? subtree : balance(subtree.data, subtree.left, right);
+        }
+
+        if(subtree.left == null || subtree.right == null) {
+            return subtree.left != null ? subtree.left : subtree.right;
+        }
+
+        //Two children: the in-order successor takes the place of the removed value
+        Node<T> successor = subtree.right;
+
+        while(successor.left != null) {
+            successor = successor.left;
+        }
+
+        return balance(successor.data, subtree.left, removeMin(subtree.right));
+    }
+
+    //Returns a copy of subtree without its smallest value
+    protected Node<T> removeMin(Node<T> subtree) {
+        if(subtree.left == null) {
+            return subtree.right;
+        }
+
+        return balance(subtree.data, removeMin(subtree.left), subtree.right);
+    }
+
+    /**
+     * Builds a node from data and two subtrees whose heights differ by at most
+     * two, rotating with a single or a double rotation when they differ by two,
+     * like AVLTree.rebalanceNode.
+     */
+    protected Node<T> balance(T data, Node<T> left, Node<T> right) {
+        int difference = heightOf(left) - heightOf(right);
+
+        if(difference > 1) {
+            //Left-right case: rotate the left child's right child above it first
+            if(heightOf(left.left) < heightOf(left.right)) {
+                left = rotateLeft(left);
+            }
+
+            return rotateRight(new Node<>(data, left, right));
+        } else if(difference < -1) {
+            if(heightOf(right.right) < heightOf(right.left)) {
+                right = rotateRight(right);
+            }
+
+            return rotateLeft(new Node<>(data, left, right));
+        }
+
+        return new Node<>(data, left, right);
+    }
+
+    /**
+     * Rotates the left child of parent above it, like BSTRotation.rotate does
+     * for a left child, but returns new nodes instead of relinking the old
+     * ones: the child's right subtree moves across to the parent.
+     */
+    protected Node<T> rotateRight(Node<T> parent) {
+        Node<T> child = parent.left;
+        return new Node<>(child.data, child.left, new Node<>(parent.data, child.right, parent.right));
+    }
+
+    //The mirror image of rotateRight, rotating the right child of parent above it
+    protected Node<T> rotateLeft(Node<T> parent) {
+        Node<T> child = parent.right;
+        return new Node<>(child.data, new Node<>(parent.data, parent.left, child.left), child.right);
+    }
+
+    @Override
+    public boolean contains(Comparable<T> data) throws NullPointerException {
+        if(data == null) {
+            throw new NullPointerException();
+        }
+
+        return containsHelper(data, root);
+    }
+
+    //Searches the subtree of a single version, which no writer can change
+    protected static <T> boolean containsHelper(Comparable<T> data, Node<T> subtree) {
+        while(subtree != null) {
+            int comparison = data.compareTo(subtree.data);
+
+            if(comparison == 0) {
+                return true;
+            }
+
+            subtree = comparison < 0 ? subtree.left : subtree.right;
+        }
+
+        return false;
+    }
+
+    @Override
+    public int size() {
+        return sizeOf(root);
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return root == null;
+    }
+
+    @Override
+    public synchronized void clear() {
+        root = null;
+    }
+
+    /**
+     * @return an iterator over the values of the current version in sorted
+     * order; changes made while iterating are not seen, and it does not
+     * support remove
+     */
+    @Override
+    public Iterator<T> iterator() {
+        return new InOrderIterator<>(root);
+    }
+
+    /**
+     * Returns the current version of the tree in O(1). It never changes,
+     * whatever happens to this tree afterwards.
+     * @return an immutable view of the tree as it is now
+     */
+    public Snapshot<T> snapshot() {
+        return new Snapshot<>(root);
+    }
+
+    protected static <T> int heightOf(Node<T> node) {
+        return node == null ? 0 : node.height;
+    }
+
+    protected static <T> int sizeOf(Node<T> node) {
+        return node == null ? 0 : node.size;
+    }
+
+    /**
+     * One version of a PersistentTree. It implements the read side of
+     * SortedCollection; insert and clear throw UnsupportedOperationException.
+     */
+    public static class Snapshot<T extends Comparable<T>> implements SortedCollection<T>, Iterable<T> {
+        //The root of this version
+        protected final Node<T> root;
+
+        protected Snapshot(Node<T> root) {
+            this.root = root;
+        }
+
+        @Override
+        public void insert(T data) throws UnsupportedOperationException {
+            throw new UnsupportedOperationException("a snapshot can't be modified");
+        }
+
+        @Override
+        public boolean contains(Comparable<T> data) throws NullPointerException {
+            if(data == null) {
+                throw new NullPointerException();
+            }
+
+            return containsHelper(data, root);
+        }
+
+        @Override
+        public int size() {
+            return sizeOf(root);
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return root == null;
+        }
+
+        @Override
+        public void clear() throws UnsupportedOperationException {
+            throw new UnsupportedOperationException("a snapshot can't be modified");
+        }
+
+        //Returns an iterator over the values of this version in sorted order
+        @Override
+        public Iterator<T> iterator() {
+            return new InOrderIterator<>(root);
+        }
+    }
+
+    /**
+     * Walks one version in-order. Nodes have no parent references, so it keeps
+     * the nodes still to be returned after their left subtrees on a stack,
+     * which never holds more than the height of the tree.
+     */
+    protected static class InOrderIterator<T> implements Iterator<T> {
+        private final ArrayDeque<Node<T>> stack = new ArrayDeque<>();
+
+        protected InOrderIterator(Node<T> root) {
+            pushLeftSpine(root);
+        }
+
+        private void pushLeftSpine(Node<T> node) {
+            for(; node != null; node = node.left) {
+                stack.push(node);
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return !stack.isEmpty();
+        }
+
+        @Override
+        public T next() {
+            if(stack.isEmpty()) {
+                throw new NoSuchElementException();
+            }
+
+            Node<T> node = stack.pop();
+            pushLeftSpine(node.right);
+            return node.data;
+        }
+    }
+
+    //Checks that every cached height and size is right, that the values are in order and that no node is out of balance
+    protected static <T extends Comparable<T>> boolean isValid(Node<T> subtree) {
+        if(subtree == null) {
+            return true;
+        }
+
+        boolean ordered = (subtree.left == null || subtree.left.data.compareTo(subtree.data) <= 0)
+            && (subtree.right == null || subtree.right.data.compareTo(subtree.data) >= 0);
+
+        return ordered && subtree.height == 1 + Math.max(heightOf(subtree.left), heightOf(subtree.right))
+            && subtree.size == 1 + sizeOf(subtree.left) + sizeOf(subtree.right)
+            && Math.abs(heightOf(subtree.left) - heightOf(subtree.right)) <= 1
+            && isValid(subtree.left) && isValid(subtree.right);
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        PersistentTree<Integer> tree = new PersistentTree<>();
+
+        System.out.println(tree.test1() ? "Test 1 passed" : "Test 1 failed");
+        System.out.println(tree.test2() ? "Test 2 passed" : "Test 2 failed");
+        System.out.println(tree.test3() ? "Test 3 passed" : "Test 3 failed");
+    }
+
+    //Snapshots keep their contents while the tree goes on changing, and share all but one path with the next version
+    public boolean test1() {
+        PersistentTree<Integer> intTree = new PersistentTree<>();
+        boolean successful = true;
+
+        for(int i = 0; i < 1000; ++i) {
+            intTree.insert(i);
+        }
+
+        Snapshot<Integer> before = intTree.snapshot();
+        intTree.insert(1000);
+        intTree.remove(0);
+        Snapshot<Integer> after = intTree.snapshot();
+
+        successful = successful && before.size() == 1000 && before.contains(0) && !before.contains(1000);
+        successful = successful && after.size() == 1000 && !after.contains(0) && after.contains(1000);
+
+        //The insert at the right end and the remove at the left end leave the middle subtrees untouched
+        successful = successful && before.root.left.right == after.root.left.right;
+
+        int expected = 0;
+
+        for(Integer value : before) {
+            successful = successful && value == expected++;
+        }
+
+        try {
+            before.insert(5);
+            successful = false;
+        } catch(UnsupportedOperationException e) {
+            //expected, snapshots are read-only
+        }
+
+        //A sorted insert order would build a chain without rotations, the AVL bound is about 1.44 * log2(n)
+        return successful && expected == 1000 && heightOf(intTree.root) <= 15 && isValid(intTree.root);
+    }
+
+    //Random inserts, removes and clears against a sorted array of the expected contents
+    public boolean test2() {
+        PersistentTree<Integer> intTree = new PersistentTree<>();
+        int[] counts = new int[300];
+        boolean successful = true;
+
+        for(int i = 0; i < 20000; ++i) {
+            int key = (int) (Math.random() * 300d);
+
+            if(Math.random() < 0.6d) {
+                intTree.insert(key);
+                ++counts[key];
+            } else {
+                successful = successful && intTree.remove(key) == (counts[key] > 0);
+                counts[key] = Math.max(0, counts[key] - 1);
+            }
+        }
+
+        int expectedSize = 0;
+
+        for(int key = 0; key < 300; ++key) {
+            successful = successful && intTree.contains(key) == (counts[key] > 0);
+            expectedSize += counts[key];
+        }
+
+        successful = successful && intTree.size() == expectedSize && isValid(intTree.root);
+        Snapshot<Integer> full = intTree.snapshot();
+        intTree.clear();
+
+        return successful && intTree.isEmpty() && full.size() == expectedSize;
+    }
+
+    //Readers taking snapshots while a writer inserts always see a consistent version: sorted, with as many values as its size
+    public boolean test3() throws InterruptedException {
+        PersistentTree<Integer> intTree = new PersistentTree<>();
+        AtomicBoolean done = new AtomicBoolean(false);
+        AtomicBoolean successful = new AtomicBoolean(true);
+        Thread[] readers = new Thread[4];
+
+        for(int t = 0; t < readers.length; ++t) {
+            readers[t] = new Thread(() -> {
+                while(!done.get()) {
+                    Snapshot<Integer> snapshot = intTree.snapshot();
+                    int count = 0;
+                    int previous = Integer.MIN_VALUE;
+
+                    for(Integer value : snapshot) {
+                        if(value < previous) {
+                            successful.set(false);
+                        }
+
+                        previous = value;
+                        ++count;
+                    }
+
+                    if(count != snapshot.size()) {
+                        successful.set(false);
+                    }
+                }
+            });
+            readers[t].start();
+        }
+
+        for(int i = 0; i < 20000; ++i) {
+            intTree.insert((int) (Math.random() * 100000d));
+        }
+
+        done.set(true);
+
+        for(Thread reader : readers) {
+            reader.join();
+        }
+
+        return successful.get() && intTree.size() == 20000 && isValid(intTree.root);
+    }
+}
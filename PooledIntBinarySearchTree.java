@@ -0,0 +1,301 @@
+/**
+ * A binary search tree of int keys whose nodes live in an IntNodePool instead
+ * of being separate objects. Nodes are int indices into the pool, so the tree
+ * creates no garbage per insert, and removed nodes are recycled through the
+ * pool's free list. The insert, contains and rotate algorithms are the same
+ * ones IntBinarySearchTree and BSTRotation run over object references.
+ */
+public class PooledIntBinarySearchTree {
+
+    private static final int NIL = IntNodePool.NIL;
+
+    //The storage for every node of this tree
+    protected final IntNodePool pool;
+    //The index of the root node of this tree, or NIL when the tree is empty
+    protected int root;
+    //The number of keys in this tree
+    protected int size;
+
+    //Creates an empty PooledIntBinarySearchTree with a small initial pool
+    public PooledIntBinarySearchTree() {
+        this(16);
+    }
+
+    //Creates an empty PooledIntBinarySearchTree whose pool has room for initialCapacity nodes before it grows
+    public PooledIntBinarySearchTree(int initialCapacity) {
+        pool = new IntNodePool(initialCapacity);
+        root = NIL;
+        size = 0;
+    }
+
+    //Inserts the key into the tree, duplicates included
+    public void insert(int key) {
+        int newNode = pool.allocate(key);
+        ++size;
+
+        if(root == NIL) {
+            root = newNode;
+            return;
+        }
+
+        insertHelper(newNode, root);
+    }
+
+    //Walks down from subtree to the empty child slot where newNode belongs, sending equal keys to the left
+    protected void insertHelper(int newNode, int subtree) {
+        int key = pool.getKey(newNode);
+
+        while(subtree != NIL) {
+            if(key <= pool.getKey(subtree)) {
+                if(pool.getLeft(subtree) == NIL) {
+                    pool.setLeft(subtree, newNode);
+                    pool.setParent(newNode, subtree);
+                    return;
+                }
+
+                subtree = pool.getLeft(subtree);
+            } else {
+                if(pool.getRight(subtree) == NIL) {
+                    pool.setRight(subtree, newNode);
+                    pool.setParent(newNode, subtree);
+                    return;
+                }
+
+                subtree = pool.getRight(subtree);
+            }
+        }
+    }
+
+    //Checks whether the key is stored in the tree one or more times
+    public boolean contains(int key) {
+        return findNode(key) != NIL;
+    }
+
+    //Returns the index of a node holding key, or NIL when there is none
+    protected int findNode(int key) {
+        int current = root;
+
+        while(current != NIL) {
+            int currentKey = pool.getKey(current);
+
+            if(key == currentKey) {
+                return current;
+            }
+
+            current = key < currentKey ? pool.getLeft(current) : pool.getRight(current);
+        }
+
+        return NIL;
+    }
+
+    /**
+     * Removes one occurrence of key from the tree and returns its node to the
+     * pool's free list, so the next insert reuses it.
+     * @param key the key to remove
+     * @return true when an occurrence was removed, false when key was not in
+     * the tree
+     */
+    public boolean remove(int key) {
+        int node = findNode(key);
+
+        if(node == NIL) {
+            return false;
+        }
+
+        if(pool.getLeft(node) == NIL || pool.getRight(node) == NIL) {
+            //At most one child: that child takes the node's place
+            replaceChild(node, pool.getLeft(node) != NIL ? pool.getLeft(node) : pool.getRight(node));
+        } else {
+            //Two children: splice the in-order successor out of the right subtree and into the node's place
+            int successor = pool.getRight(node);
+
+            while(pool.getLeft(successor) != NIL) {
+                successor = pool.getLeft(successor);
+            }
+
+            if(pool.getParent(successor) != node) {
+                replaceChild(successor, pool.getRight(successor));
+                pool.setRight(successor, pool.getRight(node));
+                pool.setParent(pool.getRight(node), successor);
+            }
+
+            replaceChild(node, successor);
+            pool.setLeft(successor, pool.getLeft(node));
+            pool.setParent(pool.getLeft(node), successor);
+        }
+
+        pool.release(node);
+        --size;
+
+        return true;
+    }
+
+    //Links replacement (which may be NIL) into the position node holds under its parent, or at the root
+    private void replaceChild(int node, int replacement) {
+        int parent = pool.getParent(node);
+
+        if(parent == NIL) {
+            root = replacement;
+        } else if(pool.getLeft(parent) == node) {
+            pool.setLeft(parent, replacement);
+        } else {
+            pool.setRight(parent, replacement);
+        }
+
+        if(replacement != NIL) {
+            pool.setParent(replacement, parent);
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return root == NIL;
+    }
+
+    //Releases every node at once, the pool keeps its backing array for the next inserts
+    public void clear() {
+        pool.clear();
+        root = NIL;
+        size = 0;
+    }
+
+    /**
+     * Performs the rotation operation on the provided nodes within this tree,
+     * exactly like BSTRotation.rotate: a right rotation when child is the left
+     * child of parent, and a left rotation when it is the right child.
+     *
+     * @param child is the node being rotated from child to parent position
+     * @param parent is the node being rotated from parent to child position
+     * @throws IllegalArgumentException when either node is NIL, or when the
+     *     provided child and parent nodes are not initially related that way
+     */
+    protected void rotate(int child, int parent) throws IllegalArgumentException {
+        if(child == NIL || parent == NIL || pool.getParent(child) != parent
+                || (pool.getLeft(parent) != child && pool.getRight(parent) != child)) {
+            throw new IllegalArgumentException();
+        }
+
+        replaceChild(parent, child);
+
+        //The inner subtree of child moves across to parent
+        if(pool.getLeft(parent) == child) {
+            int inner = pool.getRight(child);
+            pool.setLeft(parent, inner);
+
+            if(inner != NIL) {
+                pool.setParent(inner, parent);
+            }
+
+            pool.setRight(child, parent);
+        } else {
+            int inner = pool.getLeft(child);
+            pool.setRight(parent, inner);
+
+            if(inner != NIL) {
+                pool.setParent(inner, parent);
+            }
+
+            pool.setLeft(child, parent);
+        }
+
+        pool.setParent(parent, child);
+    }
+
+    public static void main(String[] args) {
+        PooledIntBinarySearchTree tree = new PooledIntBinarySearchTree();
+
+        System.out.println(tree.test1() ? "Test 1 passed" : "Test 1 failed");
+        System.out.println(tree.test2() ? "Test 2 passed" : "Test 2 failed");
+        System.out.println(tree.test3() ? "Test 3 passed" : "Test 3 failed");
+    }
+
+    //Inserts random keys with duplicates and checks contains, size and clear
+    public boolean test1() {
+        PooledIntBinarySearchTree intTree = new PooledIntBinarySearchTree();
+        int[] counts = new int[2000];
+        boolean successful = true;
+
+        for(int i = 0; i < 1000; ++i) {
+            int key = (int) (Math.random() * 2000d) - 1000;
+            intTree.insert(key);
+            ++counts[key + 1000];
+        }
+
+        for(int key = -1000; key < 1000; ++key) {
+            successful = successful && intTree.contains(key) == (counts[key + 1000] > 0);
+        }
+
+        successful = successful && intTree.size() == 1000;
+        intTree.clear();
+
+        return successful && intTree.size() == 0 && !intTree.contains(0);
+    }
+
+    //Removes random keys and checks that the remaining keys are intact and that freed nodes are reused instead of growing the pool
+    public boolean test2() {
+        PooledIntBinarySearchTree intTree = new PooledIntBinarySearchTree(1000);
+        int[] counts = new int[500];
+        boolean successful = true;
+
+        for(int i = 0; i < 1000; ++i) {
+            int key = (int) (Math.random() * 500d);
+            intTree.insert(key);
+            ++counts[key];
+        }
+
+        for(int round = 0; round < 5000; ++round) {
+            int key = (int) (Math.random() * 500d);
+
+            boolean removed = intTree.remove(key);
+            successful = successful && removed == (counts[key] > 0);
+
+            //Put a key back for every removed one, so the tree stays at 1000 keys and only ever needs recycled nodes
+            if(removed) {
+                --counts[key];
+                int insertKey = (int) (Math.random() * 500d);
+                intTree.insert(insertKey);
+                ++counts[insertKey];
+            }
+        }
+
+        int expectedSize = 0;
+
+        for(int key = 0; key < 500; ++key) {
+            successful = successful && intTree.contains(key) == (counts[key] > 0);
+            expectedSize += counts[key];
+        }
+
+        return successful && intTree.size() == 1000 && expectedSize == 1000 && intTree.pool.capacity() == 1000;
+    }
+
+    //Rotates the last node of a sorted chain up to the root, like BSTRotation.test1
+    public boolean test3() {
+        PooledIntBinarySearchTree intTree = new PooledIntBinarySearchTree();
+        int[] nodes = new int[100];
+        boolean successful = true;
+
+        for(int i = 0; i < 100; ++i) {
+            intTree.insert(i);
+        }
+
+        nodes[0] = intTree.root;
+
+        for(int i = 1; i < 100; ++i) {
+            nodes[i] = intTree.pool.getRight(nodes[i - 1]);
+        }
+
+        for(int i = 99; i > 0; --i) {
+            intTree.rotate(nodes[99], nodes[i - 1]);
+            successful = successful && intTree.pool.getParent(nodes[i - 1]) == nodes[99];
+        }
+
+        for(int i = 0; i < 100; ++i) {
+            successful = successful && intTree.contains(i);
+        }
+
+        return successful && intTree.root == nodes[99];
+    }
+}
@@ -0,0 +1,28 @@
+/**
+ * This class represents a node for a Red-Black Tree. On top of the value and
+ * the parent/children references of a BinaryNode, it also stores the color
+ * of the node. New nodes are always red.
+ */
+public class RBTNode<T> extends BinaryNode<T> {
+
+    // true when this node is black, false when it is red
+    protected boolean black = false;
+
+    /**
+     * Constructor that creates a new red node with the value data.
+     * @param data the value the new node stores
+     */
+    public RBTNode(T data) { super(data); }
+
+    /**
+     * @return true when this node is black, false when it is red
+     */
+    public boolean isBlack() { return this.black; }
+
+    /**
+     * Changes the color of this node.
+     * @param black true to color this node black, false to color it red
+     */
+    public void setBlack(boolean black) { this.black = black; }
+
+}
@@ -0,0 +1,415 @@
+import java.util.ArrayList;
+import java.util.BitSet;
+
+/**
+ * A self-balancing BSTRotation that keeps the red-black tree properties after
+ * every insert and remove: the root is black, a red node never has a red child, and every
+ * path from a node down to a null reference crosses the same number of black
+ * nodes. Together these bound the height of the tree by 2 * log2(n + 1).
+ */
+public class RedBlackTree<T extends Comparable<T>> extends BSTRotation<T> {
+    public RedBlackTree() {
+        super();
+    }
+
+    //Creates an empty RedBlackTree, in multiset mode when multiset is true
+    public RedBlackTree(boolean multiset) {
+        super(multiset);
+    }
+
+    @Override
+    //Inserts the data as a new red node, and then restores the red-black tree properties around it
+    public void insert(T data) throws NullPointerException {
+        if(data == null) {
+            throw new NullPointerException();
+        }
+
+        //Counting one more occurrence in an existing node changes no colors
+        if(addOccurrence(data) != null) {
+            return;
+        }
+
+        RBTNode<T> newNode = new RBTNode<>(data);
+
+        if(this.isEmpty()) {
+            root = newNode;
+        } else {
+            insertHelper(newNode, root);
+        }
+
+        //Record where the value landed, before the fixup rotates it around
+        if(metrics != null) {
+            metrics.recordInsert(depthOf(newNode));
+        }
+
+        enforceRBTreePropertiesAfterInsert(newNode);
+    }
+
+    @Override
+    //Bulk loaded trees are made of red-black tree nodes as well
+    protected BinaryNode<T> createNode(T data) {
+        return new RBTNode<>(data);
+    }
+
+    /**
+     * Replaces the contents of this tree with the provided values, building a
+     * perfectly balanced tree and then coloring it: the nodes on the deepest
+     * level are red and all others are black, so every path crosses the same
+     * number of black nodes.
+     * @param values the values to load into the tree, duplicates included
+     * @throws NullPointerException if values or any of its elements is null
+     */
+    @Override
+    public void bulkLoad(T[] values) throws NullPointerException {
+        super.bulkLoad(values);
+
+        //The deepest level of a balanced build is one above its height; counting nodes rather than using size() works in multiset mode too
+        colorByDepth(root, 0, heightHelper(root) - 1);
+    }
+
+    /**
+     * Grafting whole subtrees would break the red-black tree properties, so the values are inserted one at a time.
+     * @param values the values to insert
+     * @throws NullPointerException if values or any of its elements is null
+     */
+    @Override
+    public void insertAll(T[] values) throws NullPointerException {
+        for(T value : sortedValues(values)) {
+            insert(value);
+        }
+    }
+
+    /**
+     * A red-black tree can't take an arbitrary shape, so the shape is ignored
+     * and the values are bulk loaded into a balanced, validly colored tree.
+     * @param sorted the values of the tree in sorted order
+     * @param shape ignored
+     * @throws NullPointerException if sorted or any of its elements is null
+     */
+    @Override
+    public void restoreShape(T[] sorted, BitSet shape) throws NullPointerException {
+        bulkLoad(sorted);
+    }
+
+    /**
+     * Rebuilds the tree into a perfectly balanced shape like BSTRotation does,
+     * and then colors it the same way as a bulk loaded tree.
+     */
+    @Override
+    public void rebalance() {
+        super.rebalance();
+        colorByDepth(root, 0, heightHelper(root) - 1);
+    }
+
+    //Colors the nodes of a perfectly balanced subtree red on the deepest level (unless that is the root) and black elsewhere
+    protected void colorByDepth(BinaryNode<T> subtree, int depth, int deepest) {
+        if(subtree == null) {
+            return;
+        }
+
+        ((RBTNode<T>) subtree).setBlack(depth == 0 || depth != deepest);
+        colorByDepth(subtree.getLeft(), depth + 1, deepest);
+        colorByDepth(subtree.getRight(), depth + 1, deepest);
+    }
+
+    /**
+     * Resolves any red-black tree property violation introduced by inserting
+     * the provided red node into the tree. Recolors the node's parent, aunt and
+     * grandparent while the aunt is red, and otherwise performs one or two
+     * rotations to fix the violation.
+     * @param newNode the red node that was just inserted into the tree
+     */
+    protected void enforceRBTreePropertiesAfterInsert(RBTNode<T> newNode) {
+        RBTNode<T> node = newNode;
+
+        //Only a red parent can violate the properties, and a red parent is never the root, so the grandparent always exists
+        while(node != root && isRed(node.getParent())) {
+            RBTNode<T> parent = (RBTNode<T>) node.getParent();
+            RBTNode<T> grandparent = (RBTNode<T>) parent.getParent();
+            RBTNode<T> aunt = (RBTNode<T>) (parent.isRightChild() ? grandparent.getLeft() : grandparent.getRight());
+
+            if(isRed(aunt)) {
+                //Red aunt: push the grandparent's black down one level and continue fixing from the grandparent
+                parent.setBlack(true);
+                aunt.setBlack(true);
+                grandparent.setBlack(false);
+                node = grandparent;
+            } else {
+                //Black aunt in a zig-zag shape: rotate it into a line first
+                if(node.isRightChild() != parent.isRightChild()) {
+                    rotate(node, parent);
+                    node = parent;
+                    parent = (RBTNode<T>) node.getParent();
+                }
+
+                //Black aunt in a line: rotate the parent above the grandparent and swap their colors
+                parent.setBlack(true);
+                grandparent.setBlack(false);
+                rotate(parent, grandparent);
+            }
+        }
+
+        ((RBTNode<T>) root).setBlack(true);
+    }
+
+    /**
+     * Removes the provided node by splicing it out of the tree, and then
+     * restores the red-black tree properties if a black node left the tree.
+     * When the node has two children, its in-order successor takes its place
+     * and its color, so the color that leaves the tree is the successor's.
+     * @param node a node of this tree
+     */
+    @Override
+    protected void removeNode(BinaryNode<T> node) {
+        //The node that physically leaves its position, and the (possibly null) child that moves up into that position
+        BinaryNode<T> moved = node.getLeft() != null && node.getRight() != null ? leftmost(node.getRight()) : node;
+        BinaryNode<T> replacement = moved.getLeft() != null ? moved.getLeft() : moved.getRight();
+        boolean removedBlack = !isRed(moved);
+
+        BinaryNode<T> replacementParent = spliceNode(node);
+
+        if(moved != node) {
+            ((RBTNode<T>) moved).setBlack(((RBTNode<T>) node).isBlack());
+        }
+
+        if(removedBlack) {
+            enforceRBTreePropertiesAfterRemove(replacement, replacementParent);
+        }
+    }
+
+    /**
+     * Resolves the missing black node on every path through the provided
+     * position after a black node was removed from it. The position is given
+     * by its parent, since the node now in it may be null.
+     * @param node the node that took the removed node's place, possibly null
+     * @param parent the parent of that position, or null when it is the root
+     */
+    protected void enforceRBTreePropertiesAfterRemove(BinaryNode<T> node, BinaryNode<T> parent) {
+        //A red node can simply be recolored black; otherwise the paths through node are one black node short
+        while(node != root && !isRed(node)) {
+            boolean isLeft = node == parent.getLeft();
+            //The sibling has a black height of at least one, so it is never null
+            RBTNode<T> sibling = (RBTNode<T>) (isLeft ? parent.getRight() : parent.getLeft());
+
+            if(isRed(sibling)) {
+                //Red sibling: rotate it above the parent so node gets a black sibling
+                sibling.setBlack(true);
+                ((RBTNode<T>) parent).setBlack(false);
+                rotate(sibling, parent);
+                sibling = (RBTNode<T>) (isLeft ? parent.getRight() : parent.getLeft());
+            }
+
+            BinaryNode<T> outerNephew = isLeft ? sibling.getRight() : sibling.getLeft();
+            BinaryNode<T> innerNephew = isLeft ? sibling.getLeft() : sibling.getRight();
+
+            if(!isRed(outerNephew) && !isRed(innerNephew)) {
+                //Black sibling with black children: make the sibling red and move the missing black up to the parent
+                sibling.setBlack(false);
+                node = parent;
+                parent = node.getParent();
+            } else {
+                //Black sibling with a red inner child only: rotate that child above the sibling to make it the outer child
+                if(!isRed(outerNephew)) {
+                    ((RBTNode<T>) innerNephew).setBlack(true);
+                    sibling.setBlack(false);
+                    rotate(innerNephew, sibling);
+                    sibling = (RBTNode<T>) innerNephew;
+                    outerNephew = isLeft ? sibling.getRight() : sibling.getLeft();
+                }
+
+                //Black sibling with a red outer child: rotate the sibling above the parent, which adds the missing black
+                sibling.setBlack(((RBTNode<T>) parent).isBlack());
+                ((RBTNode<T>) parent).setBlack(true);
+                ((RBTNode<T>) outerNephew).setBlack(true);
+                rotate(sibling, parent);
+                node = root;
+            }
+        }
+
+        if(node != null) {
+            ((RBTNode<T>) node).setBlack(true);
+        }
+    }
+
+    /**
+     * @return true when the provided node is a red node, and false when it is
+     * black or null (null children count as black)
+     */
+    protected boolean isRed(BinaryNode<T> node) {
+        return node != null && !((RBTNode<T>) node).isBlack();
+    }
+
+    /**
+     * Checks the red-black tree properties of the subtree rooted at the
+     * provided node.
+     * @return the number of black nodes on every path from subtree down to a
+     * null reference, or -1 when the properties are violated
+     */
+    protected int blackHeight(BinaryNode<T> subtree) {
+        if(subtree == null) {
+            return 0;
+        }
+
+        if(isRed(subtree) && (isRed(subtree.getLeft()) || isRed(subtree.getRight()))) {
+            return -1;
+        }
+
+        int left = blackHeight(subtree.getLeft());
+        int right = blackHeight(subtree.getRight());
+
+        if(left == -1 || left != right) {
+            return -1;
+        }
+
+        return left + (isRed(subtree) ? 0 : 1);
+    }
+
+    //Checks that the whole tree is a valid red-black tree with a black root, and that its height is within 2 * log2(n + 1)
+    protected boolean isValidRedBlackTree() {
+        if(isRed(root) || blackHeight(root) == -1) {
+            return false;
+        }
+
+        return heightHelper(root) <= 2d * Math.log(size() + 1) / Math.log(2);
+    }
+
+    public static void main(String[] args) {
+        RedBlackTree<Integer> tree = new RedBlackTree<>();
+
+        System.out.println(tree.test1() ? "Test 1 passed" : "Test 1 failed");
+        System.out.println(tree.test2() ? "Test 2 passed" : "Test 2 failed");
+        System.out.println(tree.test3() ? "Test 3 passed" : "Test 3 failed");
+        System.out.println(tree.test4() ? "Test 4 passed" : "Test 4 failed");
+        System.out.println(tree.test5() ? "Test 5 passed" : "Test 5 failed");
+        System.out.println(tree.test6() ? "Test 6 passed" : "Test 6 failed");
+    }
+
+    //Inserts sorted runs of integers (the worst case for an unbalanced tree), and checks contains, size and the red-black tree properties
+    public boolean test1() {
+        RedBlackTree<Integer> intTree = new RedBlackTree<>();
+        boolean successful = true;
+
+        for(int i = 0; i < 10000; ++i) {
+            intTree.insert(i);
+        }
+
+        for(int i = 0; i < 10000; ++i) {
+            if(!intTree.contains(i)) {
+                successful = false;
+                System.out.println("Contains check failed for: " + i);
+            }
+        }
+
+        successful = successful && !intTree.contains(-1) && !intTree.contains(10000);
+        successful = successful && intTree.size() == 10000 && intTree.isValidRedBlackTree() && intTree.hasConsistentSizes();
+
+        intTree.clear();
+        successful = successful && intTree.size() == 0;
+
+        return successful;
+    }
+
+    //Inserts random strings, including duplicates, and checks the red-black tree properties after every insert
+    public boolean test2() {
+        RedBlackTree<String> stringTree = new RedBlackTree<>();
+        ArrayList<String> inserted = new ArrayList<>();
+        boolean successful = true;
+
+        for(int i = 0; i < 500; ++i) {
+            //Roughly a third of the inserts are duplicates of an earlier string
+            String insertString = !inserted.isEmpty() && Math.random() < 0.33d
+                ? inserted.get((int) (Math.random() * inserted.size()))
+                : Integer.toString((int) (Math.random() * 100000d), 36);
+
+            stringTree.insert(insertString);
+            inserted.add(insertString);
+
+            successful = successful && stringTree.isValidRedBlackTree();
+        }
+
+        for(int i = 0; i < inserted.size(); ++i) {
+            successful = successful && stringTree.contains(inserted.get(i));
+        }
+
+        return successful && stringTree.size() == inserted.size();
+    }
+
+    //Inserts reverse-sorted floats and checks the red-black tree properties
+    public boolean test3() {
+        RedBlackTree<Float> floatTree = new RedBlackTree<>();
+        boolean successful = true;
+
+        for(int i = 1000; i > 0; --i) {
+            floatTree.insert(i / 8f);
+            successful = successful && floatTree.contains(i / 8f);
+        }
+
+        return successful && floatTree.size() == 1000 && floatTree.isValidRedBlackTree();
+    }
+
+    //Inserts and removes random integers, and checks the red-black tree properties after every removal
+    public boolean test4() {
+        RedBlackTree<Integer> intTree = new RedBlackTree<>();
+        boolean successful = true;
+
+        for(int i = 0; i < 2000; ++i) {
+            intTree.insert((int) (Math.random() * 300d));
+        }
+
+        for(int i = 0; i < 3000; ++i) {
+            int num = (int) (Math.random() * 300d);
+
+            if(Math.random() < 0.5d) {
+                intTree.remove(num);
+            } else {
+                intTree.removeAll(num);
+            }
+
+            successful = successful && intTree.isValidRedBlackTree() && intTree.hasConsistentSizes();
+            intTree.insert((int) (Math.random() * 300d));
+        }
+
+        RedBlackTree<Integer> multisetTree = new RedBlackTree<>(true);
+        return successful && removalTest(new RedBlackTree<>()) && removalTest(multisetTree) && multisetTree.isValidRedBlackTree();
+    }
+
+    //Bulk loads arrays of every size up to 300 and checks that the coloring is a valid red-black tree that keeps working after inserts and removes
+    public boolean test5() {
+        RedBlackTree<Integer> intTree = new RedBlackTree<>();
+        boolean successful = true;
+
+        for(int n = 0; n <= 300; ++n) {
+            Integer[] values = new Integer[n];
+
+            for(int i = 0; i < n; ++i) {
+                values[i] = (int) (Math.random() * 100d);
+            }
+
+            intTree.bulkLoad(values);
+            successful = successful && intTree.size() == n && intTree.isValidRedBlackTree() && intTree.hasConsistentSizes();
+
+            for(int i = 0; i < 20; ++i) {
+                intTree.insert((int) (Math.random() * 100d));
+                intTree.remove((int) (Math.random() * 100d));
+            }
+
+            successful = successful && intTree.isValidRedBlackTree();
+        }
+
+        return successful;
+    }
+
+    //Rebalances red-black trees of many sizes and checks that they are still valid red-black trees
+    public boolean test6() {
+        RedBlackTree<Integer> intTree = new RedBlackTree<>();
+        boolean successful = true;
+
+        for(int n = 0; n <= 300; ++n) {
+            intTree.insert((int) (Math.random() * 100d));
+            intTree.rebalance();
+            successful = successful && intTree.size() == n + 1 && intTree.isValidRedBlackTree() && intTree.hasConsistentSizes();
+        }
+
+        return successful;
+    }
+}
@@ -0,0 +1,364 @@
+import java.util.ArrayList;
+import java.util.BitSet;
+
+/**
+ * A self-balancing BinarySearchTree that keeps no balance information in its
+ * nodes: it is made of plain BinaryNodes, and only uses the subtree sizes
+ * every BinarySearchTree already keeps. An insert that lands deeper than
+ * log(n) / log(1 / alpha) levels walks back up to the lowest ancestor whose
+ * subtree is out of alpha-balance (one child holding more than alpha of its
+ * nodes), the scapegoat, and rebuilds that subtree into a perfectly balanced
+ * shape in linear time. After enough removes, the whole tree is rebuilt. Both
+ * take amortized O(log n) time, and lookups walk at most about
+ * log(n) / log(1 / alpha) levels.
+ */
+public class ScapegoatTree<T extends Comparable<T>> extends BinarySearchTree<T> {
+    //The largest fraction of a subtree's nodes one of its children may hold before the subtree counts as unbalanced
+    protected final double alpha;
+    //The most values the tree held since it was last rebuilt as a whole
+    protected int maxSize;
+
+    //Creates an empty ScapegoatTree with alpha 2/3, a common balance between lookup and update cost
+    public ScapegoatTree() {
+        this(2d / 3d);
+    }
+
+    /**
+     * Creates an empty ScapegoatTree. A lower alpha keeps the tree lower but
+     * rebuilds more often.
+     * @param alpha the balance factor, greater than 0.5 and less than 1
+     * @throws IllegalArgumentException when alpha is out of range
+     */
+    public ScapegoatTree(double alpha) throws IllegalArgumentException {
+        this(alpha, false);
+    }
+
+    /**
+     * Creates an empty ScapegoatTree, in multiset mode when multiset is true.
+     * The subtree sizes then count occurrences rather than nodes, so a
+     * subtree holding a frequent value may look unbalanced while it is not,
+     * which only costs an unneeded rebuild.
+     * @param alpha the balance factor, greater than 0.5 and less than 1
+     * @param multiset true to keep one counted node per distinct value
+     * @throws IllegalArgumentException when alpha is out of range
+     */
+    public ScapegoatTree(double alpha, boolean multiset) throws IllegalArgumentException {
+        super(multiset);
+
+        if(!(alpha > 0.5d && alpha < 1d)) {
+            throw new IllegalArgumentException("alpha must be greater than 0.5 and less than 1: " + alpha);
+        }
+
+        this.alpha = alpha;
+        this.maxSize = 0;
+    }
+
+    @Override
+    //Inserts like BinarySearchTree, and then rebuilds the subtree of the scapegoat when the new node is too deep
+    public void insert(T data) throws NullPointerException {
+        if(data == null) {
+            throw new NullPointerException();
+        }
+
+        //No node gets deeper when an existing one counts one more occurrence
+        if(addOccurrence(data) != null) {
+            return;
+        }
+
+        BinaryNode<T> newNode = createNode(data);
+
+        if(this.isEmpty()) {
+            root = newNode;
+        } else {
+            insertHelper(newNode, root);
+        }
+
+        int depth = depthOf(newNode);
+
+        if(metrics != null) {
+            metrics.recordInsert(depth);
+        }
+
+        maxSize = Math.max(maxSize, size());
+
+        if(depth > maxDepth(size())) {
+            //Going up from a node that is too deep, some ancestor must be out of alpha-balance
+            BinaryNode<T> child = newNode;
+
+            for(BinaryNode<T> parent = newNode.getParent(); parent != null; child = parent, parent = parent.getParent()) {
+                if(child.getSize() > alpha * parent.getSize()) {
+                    rebuild(parent);
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * Splices the node out like BinarySearchTree does, and rebuilds the whole
+     * tree once it holds fewer than alpha times the most values it held since
+     * its last full rebuild.
+     * @param node a node of this tree
+     */
+    @Override
+    protected void removeNode(BinaryNode<T> node) {
+        spliceNode(node);
+
+        if(size() < alpha * maxSize) {
+            rebuild(root);
+            maxSize = size();
+        }
+    }
+
+    /**
+     * Changes the count of a node like BinarySearchTree does. The size counts
+     * occurrences, so in multiset mode an extra occurrence raises the most
+     * values held, and removing one can trigger the full rebuild, just like
+     * inserting and removing a node.
+     * @param node a node of this tree
+     * @param delta how many occurrences to add, or to remove when negative
+     */
+    @Override
+    protected void changeCount(BinaryNode<T> node, int delta) {
+        super.changeCount(node, delta);
+        maxSize = Math.max(maxSize, size());
+
+        if(size() < alpha * maxSize) {
+            rebuild(root);
+            maxSize = size();
+        }
+    }
+
+    /**
+     * Replaces the contents of this tree with the provided values in a
+     * perfectly balanced shape, like BinarySearchTree does.
+     * @param values the values to load into the tree, duplicates included
+     * @throws NullPointerException if values or any of its elements is null
+     */
+    @Override
+    public void bulkLoad(T[] values) throws NullPointerException {
+        super.bulkLoad(values);
+        maxSize = size();
+    }
+
+    /**
+     * Restores the saved shape like BinarySearchTree does, and then rebuilds
+     * the whole tree if that shape is higher than a scapegoat tree may be.
+     * @param sorted the values of the tree in sorted order
+     * @param shape the child bits of the nodes in pre-order
+     * @throws NullPointerException if sorted or any of its elements is null
+     * @throws IllegalArgumentException if shape does not describe a tree of
+     *         exactly sorted.length nodes
+     */
+    @Override
+    public void restoreShape(T[] sorted, BitSet shape) throws NullPointerException, IllegalArgumentException {
+        super.restoreShape(sorted, shape);
+        maxSize = size();
+
+        if(heightHelper(root) - 1 > maxDepth(size())) {
+            rebuild(root);
+        }
+    }
+
+    /**
+     * Grafting whole subtrees could leave nodes deeper than the scapegoat
+     * bound, so the values are inserted one at a time.
+     * @param values the values to insert
+     * @throws NullPointerException if values or any of its elements is null
+     */
+    @Override
+    public void insertAll(T[] values) throws NullPointerException {
+        for(T value : sortedValues(values)) {
+            insert(value);
+        }
+    }
+
+    @Override
+    public void clear() {
+        super.clear();
+        maxSize = 0;
+    }
+
+    //Returns the deepest a node may be in a tree of size values, log(size) / log(1 / alpha)
+    protected double maxDepth(int size) {
+        return Math.log(size) / Math.log(1d / alpha);
+    }
+
+    /**
+     * Rebuilds the subtree rooted at subtree into a perfectly balanced shape in
+     * O(size) time. The nodes are collected in-order into an array and then
+     * relinked around the middle one, so no node is created, and every node
+     * outside the subtree keeps its place. Does nothing when subtree is
+     * null, as the root of a tree that was just emptied is.
+     * @param subtree a node of this tree, or null
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    protected void rebuild(BinaryNode<T> subtree) {
+        if(subtree == null) {
+            return;
+        }
+
+        //The subtree size counts occurrences, so in multiset mode it is only an upper bound on the number of nodes
+        ArrayList<BinaryNode<T>> inOrder = new ArrayList<>();
+
+        for(BinaryNode<T> current = leftmost(subtree); current != null; current = nextInOrder(current, subtree)) {
+            inOrder.add(current);
+        }
+
+        BinaryNode<T>[] nodes = inOrder.toArray((BinaryNode<T>[]) new BinaryNode[inOrder.size()]);
+
+        BinaryNode<T> parent = subtree.getParent();
+        boolean wasLeft = parent != null && parent.getLeft() == subtree;
+        BinaryNode<T> newRoot = linkBalanced(nodes, 0, nodes.length);
+
+        newRoot.setParent(parent);
+
+        if(parent == null) {
+            root = newRoot;
+        } else if(wasLeft) {
+            parent.setLeft(newRoot);
+        } else {
+            parent.setRight(newRoot);
+        }
+    }
+
+    //Links the in-order nodes in [lo, hi) into a perfectly balanced subtree, like buildBalanced does with new nodes, and returns its root
+    protected BinaryNode<T> linkBalanced(BinaryNode<T>[] nodes, int lo, int hi) {
+        if(lo >= hi) {
+            return null;
+        }
+
+        int mid = (lo + hi) >>> 1;
+        BinaryNode<T> subtreeRoot = nodes[mid];
+        BinaryNode<T> left = linkBalanced(nodes, lo, mid);
+        BinaryNode<T> right = linkBalanced(nodes, mid + 1, hi);
+
+        subtreeRoot.setLeft(left);
+        subtreeRoot.setRight(right);
+
+        if(left != null) {
+            left.setParent(subtreeRoot);
+        }
+
+        if(right != null) {
+            right.setParent(subtreeRoot);
+        }
+
+        subtreeRoot.updateSize();
+        return subtreeRoot;
+    }
+
+    public static void main(String[] args) {
+        ScapegoatTree<Integer> tree = new ScapegoatTree<>();
+
+        System.out.println(tree.test1() ? "Test 1 passed" : "Test 1 failed");
+        System.out.println(tree.test2() ? "Test 2 passed" : "Test 2 failed");
+        System.out.println(tree.test3() ? "Test 3 passed" : "Test 3 failed");
+        System.out.println(tree.test4() ? "Test 4 passed" : "Test 4 failed");
+        System.out.println(tree.test5() ? "Test 5 passed" : "Test 5 failed");
+    }
+
+    //Runs random inserts, removes and removeAlls and checks the contents and subtree sizes
+    public boolean test1() {
+        return removalTest(new ScapegoatTree<>()) && removalTest(new ScapegoatTree<>(0.55d)) && removalTest(new ScapegoatTree<>(0.6d, true));
+    }
+
+    //Sorted inserts, which build a chain in a plain tree, stay within the scapegoat height bound, and so do the removes after them
+    public boolean test2() {
+        ScapegoatTree<Integer> intTree = new ScapegoatTree<>();
+        boolean successful = true;
+
+        for(int i = 0; i < 100000; ++i) {
+            intTree.insert(i);
+        }
+
+        //The root is at depth 0, so the height is one more than the deepest depth
+        successful = successful && intTree.heightHelper(intTree.root) - 1 <= intTree.maxDepth(intTree.size());
+        successful = successful && intTree.size() == 100000 && intTree.hasConsistentSizes();
+
+        for(int i = 0; i < 100000; i += 2) {
+            successful = successful && intTree.remove(i);
+        }
+
+        for(int i = 0; i < 100000; ++i) {
+            successful = successful && intTree.contains(i) == (i % 2 == 1);
+        }
+
+        successful = successful && intTree.size() == 50000 && intTree.hasConsistentSizes();
+        successful = successful && intTree.heightHelper(intTree.root) - 1 <= intTree.maxDepth(intTree.maxSize);
+
+        //Only plain nodes, the tree keeps no balance fields
+        return successful && intTree.root.getClass() == BinaryNode.class;
+    }
+
+    //Alpha must leave room for a balanced tree and be less than 1, and batches are inserted within the bound as well
+    public boolean test3() {
+        boolean successful = true;
+
+        for(double alpha : new double[] {0.5d, 1d, 0.2d, Double.NaN}) {
+            try {
+                new ScapegoatTree<Integer>(alpha);
+                successful = false;
+            } catch(IllegalArgumentException e) {
+                //expected, alpha is out of range
+            }
+        }
+
+        ScapegoatTree<Integer> intTree = new ScapegoatTree<>(0.75d);
+        Integer[] values = new Integer[20000];
+
+        for(int i = 0; i < values.length; ++i) {
+            values[i] = values.length - i;
+        }
+
+        intTree.insertAll(values);
+        intTree.insertAll(values);
+
+        return successful && intTree.size() == 40000 && intTree.hasConsistentSizes()
+            && intTree.heightHelper(intTree.root) - 1 <= intTree.maxDepth(intTree.size());
+    }
+
+    //Removing every value rebuilds nothing once the tree is empty, and the emptied tree is used again
+    public boolean test4() {
+        ScapegoatTree<Integer> intTree = new ScapegoatTree<>();
+        intTree.insert(1);
+        boolean successful = intTree.remove(1) && intTree.isEmpty() && intTree.maxSize == 0;
+
+        for(int round = 0; round < 2; ++round) {
+            for(int i = 0; i < 10; ++i) {
+                intTree.insert(i);
+            }
+
+            for(int i = 0; i < 10; ++i) {
+                successful = successful && intTree.remove(i);
+            }
+
+            successful = successful && intTree.isEmpty() && intTree.maxSize == 0 && !intTree.contains(0);
+        }
+
+        //Restoring an empty tree must not try to rebuild it either
+        intTree.restoreShape(new Integer[0], new BitSet());
+
+        return successful && intTree.isEmpty();
+    }
+
+    //In multiset mode, extra occurrences count towards the most values held, so removing them triggers the full rebuild in time
+    public boolean test5() {
+        ScapegoatTree<Integer> intTree = new ScapegoatTree<>(0.75d, true);
+
+        for(int copy = 0; copy < 10; ++copy) {
+            for(int i = 0; i < 10; ++i) {
+                intTree.insert(i);
+            }
+        }
+
+        boolean successful = intTree.size() == 100 && intTree.maxSize == 100;
+
+        for(int i = 0; i < 26; ++i) {
+            successful = successful && intTree.remove(i % 10);
+        }
+
+        //74 values left is less than 0.75 * 100, so the tree was rebuilt and the most values held starts over
+        return successful && intTree.size() == 74 && intTree.maxSize == 74 && intTree.hasConsistentSizes();
+    }
+}
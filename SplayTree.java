@@ -0,0 +1,284 @@
+import java.util.Random;
+
+/**
+ * A self-adjusting BSTRotation that splays every node it inserts or finds to
+ * the root, using the zig, zig-zig and zig-zag rotation sequences. Any
+ * sequence of operations costs amortized O(log n) per operation, and keys that
+ * are accessed often stay close to the root, where finding them again is
+ * nearly free. Since contains restructures the tree, even lookups must not
+ * run concurrently with any other operation.
+ */
+public class SplayTree<T extends Comparable<T>> extends BSTRotation<T> {
+    public SplayTree() {
+        super();
+    }
+
+    //Creates an empty SplayTree, in multiset mode when multiset is true
+    public SplayTree(boolean multiset) {
+        super(multiset);
+    }
+
+    @Override
+    //Inserts the data like BinarySearchTree does, and then splays the new node to the root
+    public void insert(T data) throws NullPointerException {
+        if(data == null) {
+            throw new NullPointerException();
+        }
+
+        //A value inserted again is splayed just like a new one
+        BinaryNode<T> existing = addOccurrence(data);
+
+        if(existing != null) {
+            splay(existing);
+            return;
+        }
+
+        BinaryNode<T> newNode = createNode(data);
+
+        if(this.isEmpty()) {
+            root = newNode;
+        } else {
+            insertHelper(newNode, root);
+        }
+
+        if(metrics != null) {
+            metrics.recordInsert(depthOf(newNode));
+        }
+
+        splay(newNode);
+    }
+
+    @Override
+    //Searches for data, and splays the node holding it, or the last node visited when it is missing, to the root
+    public boolean contains(Comparable<T> data) throws NullPointerException {
+        if(data == null) {
+            throw new NullPointerException();
+        }
+
+        BinaryNode<T> current = root;
+        BinaryNode<T> last = null;
+        int compared = 0;
+
+        while(current != null) {
+            last = current;
+            ++compared;
+            int comparison = compare(data, current.getData());
+
+            if(comparison == 0) {
+                break;
+            }
+
+            current = comparison < 0 ? current.getLeft() : current.getRight();
+        }
+
+        if(metrics != null) {
+            metrics.recordLookup(compared);
+        }
+
+        //Splaying the last node visited keeps the cost of a failed search amortized as well
+        if(last != null) {
+            splay(last);
+        }
+
+        return current != null;
+    }
+
+    /**
+     * Every inserted value is splayed to the root, which is the point of a splay tree, so the values are inserted one at a time.
+     * @param values the values to insert
+     * @throws NullPointerException if values or any of its elements is null
+     */
+    @Override
+    public void insertAll(T[] values) throws NullPointerException {
+        for(T value : sortedValues(values)) {
+            insert(value);
+        }
+    }
+
+    /**
+     * Removes the provided node by splaying it to the root and then splicing
+     * it out, which joins its two subtrees under its in-order successor.
+     * @param node a node of this tree
+     */
+    @Override
+    protected void removeNode(BinaryNode<T> node) {
+        splay(node);
+        spliceNode(node);
+    }
+
+    /**
+     * Moves the provided node to the root of the tree. While the node has a
+     * grandparent, it rotates the parent first when node and parent are
+     * children on the same side (zig-zig), and otherwise rotates the node
+     * twice (zig-zag). A final single rotation (zig) handles a node whose
+     * parent is the root.
+     * @param node a node of this tree
+     */
+    protected void splay(BinaryNode<T> node) {
+        while(node.getParent() != null) {
+            BinaryNode<T> parent = node.getParent();
+            BinaryNode<T> grandparent = parent.getParent();
+
+            if(grandparent == null) {
+                rotate(node, parent);
+            } else if(node.isRightChild() == parent.isRightChild()) {
+                rotate(parent, grandparent);
+                rotate(node, parent);
+            } else {
+                rotate(node, parent);
+                rotate(node, grandparent);
+            }
+        }
+    }
+
+    public static void main(String[] args) {
+        SplayTree<Integer> tree = new SplayTree<>();
+
+        System.out.println(tree.test1() ? "Test 1 passed" : "Test 1 failed");
+        System.out.println(tree.test2() ? "Test 2 passed" : "Test 2 failed");
+        System.out.println(tree.test3() ? "Test 3 passed" : "Test 3 failed");
+
+        //The benchmark takes a while, so it only runs when asked for
+        if(args.length > 0 && args[0].equals("benchmark")) {
+            benchmarkZipfian(100000, 5000000, 1.0d);
+        }
+    }
+
+    //Runs random inserts, removes and removeAlls and checks the contents and subtree sizes
+    public boolean test1() {
+        return removalTest(new SplayTree<>()) && removalTest(new SplayTree<>(true));
+    }
+
+    //Checks that inserted and found values end up at the root, and that missing values don't break the tree
+    public boolean test2() {
+        SplayTree<Integer> intTree = new SplayTree<>();
+        boolean successful = true;
+
+        for(int i = 0; i < 1000; ++i) {
+            int insertNum = (int) (Math.random() * 5000d);
+            intTree.insert(insertNum);
+            successful = successful && intTree.root.getData() == insertNum;
+        }
+
+        for(int i = 0; i < 1000; ++i) {
+            int searchNum = (int) (Math.random() * 5000d);
+
+            if(intTree.contains(searchNum)) {
+                successful = successful && intTree.root.getData() == searchNum;
+            }
+        }
+
+        return successful && intTree.size() == 1000 && intTree.hasConsistentSizes() && intTree.root.getParent() == null;
+    }
+
+    //Sorted inserts build a chain, but accessing every key in turn pulls the tree back into shape, and hot keys stay near the root
+    public boolean test3() {
+        SplayTree<Integer> intTree = new SplayTree<>();
+
+        for(int i = 0; i < 20000; ++i) {
+            intTree.insert(i);
+        }
+
+        boolean successful = true;
+
+        for(int i = 0; i < 20000; ++i) {
+            successful = successful && intTree.contains(i);
+        }
+
+        //Alternate between two hot keys, each one is at most one level below the root right after the other was found
+        for(int i = 0; i < 100; ++i) {
+            successful = successful && intTree.contains(i % 2 == 0 ? 777 : 12345);
+            successful = successful && intTree.root.getData() == (i % 2 == 0 ? 777 : 12345);
+        }
+
+        return successful && intTree.size() == 20000 && intTree.hasConsistentSizes();
+    }
+
+    /**
+     * Compares the lookup throughput of a SplayTree and a BinarySearchTree
+     * holding the same keys, when the lookups follow a Zipfian distribution:
+     * the key of popularity rank r is looked up with a probability
+     * proportional to 1 / r^exponent. The popularity ranks are shuffled over
+     * the keys, so hot keys are scattered throughout the tree.
+     * @param keys how many distinct keys both trees hold
+     * @param lookups how many lookups are timed on each tree
+     * @param exponent the skew of the distribution, 1.0 is the classic Zipf law
+     */
+    public static void benchmarkZipfian(int keys, int lookups, double exponent) {
+        Random random = new Random(42);
+
+        //Insert the keys in random order so the plain tree has its expected logarithmic height
+        int[] order = new int[keys];
+
+        for(int i = 0; i < keys; ++i) {
+            order[i] = i;
+        }
+
+        for(int i = keys - 1; i > 0; --i) {
+            int j = random.nextInt(i + 1);
+            int temp = order[i];
+            order[i] = order[j];
+            order[j] = temp;
+        }
+
+        SplayTree<Integer> splayTree = new SplayTree<>();
+        BinarySearchTree<Integer> plainTree = new BinarySearchTree<>();
+
+        for(int i = 0; i < keys; ++i) {
+            splayTree.insert(order[i]);
+            plainTree.insert(order[i]);
+        }
+
+        //Cumulative distribution over popularity ranks, sampled with a binary search
+        double[] cumulative = new double[keys];
+        double total = 0d;
+
+        for(int rank = 0; rank < keys; ++rank) {
+            total += 1d / Math.pow(rank + 1, exponent);
+            cumulative[rank] = total;
+        }
+
+        //The same shuffled order maps ranks to keys, and the keys are boxed up front so boxing isn't timed
+        Integer[] queries = new Integer[lookups];
+
+        for(int i = 0; i < lookups; ++i) {
+            double target = random.nextDouble() * total;
+            int lo = 0;
+            int hi = keys - 1;
+
+            while(lo < hi) {
+                int mid = (lo + hi) >>> 1;
+
+                if(cumulative[mid] < target) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid;
+                }
+            }
+
+            queries[i] = order[lo];
+        }
+
+        //Two rounds per tree: the first one warms up the JIT
+        for(int round = 0; round < 2; ++round) {
+            long start = System.nanoTime();
+            int found = 0;
+
+            for(Integer query : queries) {
+                found += plainTree.contains(query) ? 1 : 0;
+            }
+
+            long plainTime = System.nanoTime() - start;
+            start = System.nanoTime();
+
+            for(Integer query : queries) {
+                found += splayTree.contains(query) ? 1 : 0;
+            }
+
+            long splayTime = System.nanoTime() - start;
+
+            System.out.printf("Zipf(%.2f) over %d keys: BinarySearchTree %.1f ns/lookup, SplayTree %.1f ns/lookup (%d found)%n",
+                exponent, keys, (double) plainTime / lookups, (double) splayTime / lookups, found);
+        }
+    }
+}
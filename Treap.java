@@ -0,0 +1,380 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Random;
+
+/**
+ * A randomized BSTRotation in which every node carries a random priority, and
+ * rotations keep the nodes in heap order by priority as well as in search tree
+ * order by value. The shape of the tree is then that of a tree built by
+ * inserting the values in random order, so its expected height is O(log n)
+ * whatever order the values really arrive in. Treaps can also be cut in two
+ * at a value (split) and joined back together (merge) in O(log n).
+ */
+public class Treap<T extends Comparable<T>> extends BSTRotation<T> {
+    //The source of node priorities
+    protected final Random random;
+
+    public Treap() {
+        this(new Random());
+    }
+
+    //Creates an empty Treap, in multiset mode when multiset is true
+    public Treap(boolean multiset) {
+        this(new Random(), multiset);
+    }
+
+    //Creates a Treap drawing its priorities from the provided source, which makes its shape reproducible
+    public Treap(Random random) {
+        this(random, false);
+    }
+
+    //Creates a Treap drawing its priorities from the provided source, in multiset mode when multiset is true
+    public Treap(Random random, boolean multiset) {
+        super(multiset);
+        this.random = random;
+    }
+
+    @Override
+    protected BinaryNode<T> createNode(T data) {
+        return new TreapNode<>(data, random.nextInt());
+    }
+
+    @Override
+    //Inserts the data as a leaf, and then rotates it up until its parent's priority is at least its own
+    public void insert(T data) throws NullPointerException {
+        if(data == null) {
+            throw new NullPointerException();
+        }
+
+        //Counting one more occurrence in an existing node leaves the priorities in heap order
+        if(addOccurrence(data) != null) {
+            return;
+        }
+
+        TreapNode<T> newNode = (TreapNode<T>) createNode(data);
+
+        if(this.isEmpty()) {
+            root = newNode;
+        } else {
+            insertHelper(newNode, root);
+        }
+
+        if(metrics != null) {
+            metrics.recordInsert(depthOf(newNode));
+        }
+
+        while(newNode.getParent() != null && newNode.getPriority() > priorityOf(newNode.getParent())) {
+            rotate(newNode, newNode.getParent());
+        }
+    }
+
+    @Override
+    //While a node is rotated down to be removed, the child with the higher priority moves up, which keeps the heap order
+    protected BinaryNode<T> promotedChild(BinaryNode<T> node) {
+        return priorityOf(node.getLeft()) >= priorityOf(node.getRight()) ? node.getLeft() : node.getRight();
+    }
+
+    /**
+     * Replaces the contents of this treap with the provided values in a
+     * perfectly balanced shape, and then deals out fresh priorities so that
+     * they are in heap order for that shape.
+     * @param values the values to load into the tree, duplicates included
+     * @throws NullPointerException if values or any of its elements is null
+     */
+    @Override
+    public void bulkLoad(T[] values) throws NullPointerException {
+        super.bulkLoad(values);
+        reassignPriorities();
+    }
+
+    /**
+     * Rebuilds the treap into a perfectly balanced shape like BSTRotation
+     * does, and then deals out fresh priorities in heap order for that shape.
+     */
+    @Override
+    public void rebalance() {
+        super.rebalance();
+        reassignPriorities();
+    }
+
+    /**
+     * Every value needs its own random priority and rotations into heap order, so the values are inserted one at a time.
+     * @param values the values to insert
+     * @throws NullPointerException if values or any of its elements is null
+     */
+    @Override
+    public void insertAll(T[] values) throws NullPointerException {
+        for(T value : sortedValues(values)) {
+            insert(value);
+        }
+    }
+
+    /**
+     * The shape of a treap follows from its priorities, which a snapshot
+     * doesn't hold, so the shape is ignored and the values are bulk loaded.
+     * @param sorted the values of the tree in sorted order
+     * @param shape ignored
+     * @throws NullPointerException if sorted or any of its elements is null
+     */
+    @Override
+    public void restoreShape(T[] sorted, BitSet shape) throws NullPointerException {
+        bulkLoad(sorted);
+    }
+
+    //Gives every node a fresh random priority, handing the highest ones out level by level from the root so that they are in heap order
+    protected void reassignPriorities() {
+        //Collect the nodes first, since a multiset tree has fewer nodes than size() says
+        ArrayList<BinaryNode<T>> levelOrder = new ArrayList<>();
+
+        if(root != null) {
+            levelOrder.add(root);
+        }
+
+        for(int i = 0; i < levelOrder.size(); ++i) {
+            BinaryNode<T> node = levelOrder.get(i);
+
+            if(node.getLeft() != null) {
+                levelOrder.add(node.getLeft());
+            }
+
+            if(node.getRight() != null) {
+                levelOrder.add(node.getRight());
+            }
+        }
+
+        int[] priorities = new int[levelOrder.size()];
+
+        for(int i = 0; i < priorities.length; ++i) {
+            priorities[i] = random.nextInt();
+        }
+
+        Arrays.sort(priorities);
+
+        for(int i = 0; i < priorities.length; ++i) {
+            ((TreapNode<T>) levelOrder.get(i)).setPriority(priorities[priorities.length - 1 - i]);
+        }
+    }
+
+    /**
+     * Cuts this treap in two at the provided value. Afterwards this treap holds
+     * only the values less than key, and the returned treap holds all values
+     * greater than or equal to key. Takes expected O(log n) time: a temporary
+     * node for key is inserted and rotated up to the root as if it had the
+     * highest priority, and its two subtrees are the two halves. The returned
+     * treap is in multiset mode when this one is.
+     * @param key the value to split at
+     * @return a new treap with the values of this treap that are at least key
+     * @throws NullPointerException if key is null
+     */
+    public Treap<T> split(T key) throws NullPointerException {
+        if(key == null) {
+            throw new NullPointerException();
+        }
+
+        Treap<T> upper = new Treap<>(random, multiset);
+
+        if(root == null) {
+            return upper;
+        }
+
+        //Equal values go to the left of a new node's path, so the temporary node lands before every value equal to key
+        TreapNode<T> splitter = new TreapNode<>(key, Integer.MAX_VALUE);
+        insertHelper(splitter, root);
+
+        while(splitter.getParent() != null) {
+            rotate(splitter, splitter.getParent());
+        }
+
+        root = splitter.getLeft();
+        upper.root = splitter.getRight();
+
+        if(root != null) {
+            root.setParent(null);
+        }
+
+        if(upper.root != null) {
+            upper.root.setParent(null);
+        }
+
+        return upper;
+    }
+
+    /**
+     * Joins two treaps into one in expected O(log n) time, when every value of
+     * lower is less than or equal to every value of upper. A temporary node is
+     * placed above both treaps and then rotated down and removed, which
+     * interleaves their right and left spines by priority. Both provided
+     * treaps are empty afterwards. In multiset mode, a value that is the
+     * largest of lower and the smallest of upper ends up in a single node.
+     * @param lower the treap with the smaller values
+     * @param upper the treap with the larger values
+     * @return a new treap with the values of both treaps
+     * @throws IllegalArgumentException when a value of lower is greater than a
+     *         value of upper, or when only one of the treaps is in multiset mode
+     */
+    public static <T extends Comparable<T>> Treap<T> merge(Treap<T> lower, Treap<T> upper) throws IllegalArgumentException {
+        if(lower.multiset != upper.multiset) {
+            throw new IllegalArgumentException("lower and upper must both be in multiset mode or both not be");
+        }
+
+        if(!lower.isEmpty() && !upper.isEmpty() && lower.compare(lower.last(), upper.first()) > 0) {
+            throw new IllegalArgumentException("every value of lower must be less than or equal to every value of upper");
+        }
+
+        //Move the occurrences of a value both treaps hold into lower, so it stays in a single node
+        if(lower.multiset && !lower.isEmpty() && !upper.isEmpty() && lower.compare(lower.last(), upper.first()) == 0) {
+            BinaryNode<T> first = upper.leftmost(upper.root);
+            BinaryNode<T> last = lower.root;
+
+            while(last.getRight() != null) {
+                last = last.getRight();
+            }
+
+            lower.changeCount(last, first.getCount());
+            upper.removeNode(first);
+        }
+
+        Treap<T> merged = new Treap<>(lower.random, lower.multiset);
+
+        if(lower.isEmpty() || upper.isEmpty()) {
+            merged.root = lower.isEmpty() ? upper.root : lower.root;
+        } else {
+            TreapNode<T> joiner = new TreapNode<>(lower.root.getData(), Integer.MIN_VALUE);
+            joiner.setLeft(lower.root);
+            joiner.setRight(upper.root);
+            lower.root.setParent(joiner);
+            upper.root.setParent(joiner);
+            joiner.updateSize();
+
+            merged.root = joiner;
+            merged.removeNode(joiner);
+        }
+
+        lower.clear();
+        upper.clear();
+
+        return merged;
+    }
+
+    //Returns the priority of node, treating a missing node as lower than any real one
+    protected int priorityOf(BinaryNode<T> node) {
+        return node == null ? Integer.MIN_VALUE : ((TreapNode<T>) node).getPriority();
+    }
+
+    //Checks that no node has a lower priority than one of its children
+    protected boolean hasHeapOrder() {
+        for(BinaryNode<T> current = leftmost(root); current != null; current = nextInOrder(current, root)) {
+            if(priorityOf(current.getLeft()) > priorityOf(current) || priorityOf(current.getRight()) > priorityOf(current)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    public static void main(String[] args) {
+        Treap<Integer> tree = new Treap<>();
+
+        System.out.println(tree.test1() ? "Test 1 passed" : "Test 1 failed");
+        System.out.println(tree.test2() ? "Test 2 passed" : "Test 2 failed");
+        System.out.println(tree.test3() ? "Test 3 passed" : "Test 3 failed");
+    }
+
+    //Runs random inserts, removes and removeAlls and checks the contents, subtree sizes and heap order
+    public boolean test1() {
+        Treap<Integer> intTree = new Treap<>();
+        Treap<Integer> multisetTree = new Treap<>(true);
+        boolean successful = removalTest(intTree) && intTree.hasHeapOrder() && removalTest(multisetTree) && multisetTree.hasHeapOrder();
+
+        //Splitting and merging a multiset treap keeps each value in one node, also the value at the cut
+        Treap<Integer> merged = new Treap<>(true);
+
+        for(int i = 0; i < 3000; ++i) {
+            merged.insert(i % 30);
+        }
+
+        Treap<Integer> upper = merged.split(15);
+        upper.insert(14);
+        merged = Treap.merge(merged, upper);
+
+        return successful && merged.size() == 3001 && merged.count(14) == 101 && merged.count(15) == 100
+            && merged.hasConsistentSizes() && merged.hasHeapOrder() && merged.root.getSize() == 3001;
+    }
+
+    //Sorted inserts, which build a chain in an unbalanced tree, still give a treap of logarithmic height
+    public boolean test2() {
+        Treap<Integer> intTree = new Treap<>(new Random(400));
+
+        for(int i = 0; i < 20000; ++i) {
+            intTree.insert(i);
+        }
+
+        //The expected height is about 3 * ln(n), roughly 30 levels here
+        boolean successful = intTree.heightHelper(intTree.root) <= 60 && intTree.hasHeapOrder();
+        successful = successful && intTree.size() == 20000 && intTree.hasConsistentSizes();
+
+        Integer[] values = new Integer[1000];
+
+        for(int i = 0; i < values.length; ++i) {
+            values[i] = (int) (Math.random() * 100d);
+        }
+
+        intTree.bulkLoad(values);
+        successful = successful && intTree.size() == 1000 && intTree.hasHeapOrder();
+        intTree.insert(50);
+        intTree.rebalance();
+
+        return successful && intTree.size() == 1001 && intTree.hasHeapOrder() && intTree.hasConsistentSizes();
+    }
+
+    //Splits treaps with duplicates at random values and merges the halves back together
+    public boolean test3() {
+        boolean successful = true;
+
+        for(int round = 0; round < 200; ++round) {
+            Treap<Integer> intTree = new Treap<>();
+            int n = (int) (Math.random() * 300d);
+
+            for(int i = 0; i < n; ++i) {
+                intTree.insert((int) (Math.random() * 100d));
+            }
+
+            int[] values = new int[n];
+
+            for(int k = 0; k < n; ++k) {
+                values[k] = intTree.select(k);
+            }
+
+            int key = (int) (Math.random() * 110d) - 5;
+            int below = intTree.rank(key);
+            Treap<Integer> upper = intTree.split(key);
+
+            successful = successful && intTree.size() == below && upper.size() == n - below;
+            successful = successful && (intTree.isEmpty() || intTree.last() < key) && (upper.isEmpty() || upper.first() >= key);
+            successful = successful && intTree.hasHeapOrder() && upper.hasHeapOrder();
+            successful = successful && intTree.hasConsistentSizes() && upper.hasConsistentSizes();
+
+            Treap<Integer> merged = Treap.merge(intTree, upper);
+            successful = successful && merged.size() == n && intTree.isEmpty() && upper.isEmpty();
+            successful = successful && merged.hasHeapOrder() && merged.hasConsistentSizes();
+
+            for(int k = 0; k < n; ++k) {
+                successful = successful && merged.select(k) == values[k];
+            }
+        }
+
+        try {
+            Treap<Integer> lower = new Treap<>();
+            Treap<Integer> upper = new Treap<>();
+            lower.insert(10);
+            upper.insert(5);
+            Treap.merge(lower, upper);
+            successful = false;
+        } catch(IllegalArgumentException e) {
+            //expected, the ranges of the two treaps overlap
+        }
+
+        return successful;
+    }
+}
@@ -0,0 +1,33 @@
+/**
+ * This class represents a node for a Treap. On top of the value and the
+ * parent/children references of a BinaryNode, it stores a random priority:
+ * a Treap keeps every node's priority at least as high as its children's.
+ */
+public class TreapNode<T> extends BinaryNode<T> {
+
+    // the heap priority of this node
+    protected int priority;
+
+    /**
+     * Constructor that creates a new node with the value data and the
+     * provided priority.
+     * @param data the value the new node stores
+     * @param priority the heap priority of the new node
+     */
+    public TreapNode(T data, int priority) {
+        super(data);
+        this.priority = priority;
+    }
+
+    /**
+     * @return the heap priority of this node
+     */
+    public int getPriority() { return this.priority; }
+
+    /**
+     * Gives this node a new heap priority.
+     * @param newPriority the new priority for this node
+     */
+    public void setPriority(int newPriority) { this.priority = newPriority; }
+
+}
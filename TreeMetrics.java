@@ -0,0 +1,217 @@
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Counters that show how a tree behaves under its real workload: how many
+ * inserts, lookups and rotations it does, how many nodes each search compares,
+ * and how deep inserted values land. A tree only records into a TreeMetrics
+ * after enableMetrics() is called on it; until then every hook is a single
+ * null check.
+ *
+ * All counters are striped LongAdders, so threads recording at the same time
+ * (like readers of a ConcurrentBinarySearchTree) don't contend on one memory
+ * location. The values can be read through the getters or over JMX after
+ * registerMBean().
+ */
+public class TreeMetrics implements TreeMetricsMBean {
+    //Searches comparing this many nodes or more all share the last histogram bucket
+    public static final int HISTOGRAM_BUCKETS = 64;
+
+    private final LongAdder inserts = new LongAdder();
+    private final LongAdder insertDepths = new LongAdder();
+    private final LongAdder lookups = new LongAdder();
+    private final LongAdder comparisons = new LongAdder();
+    private final LongAdder rotations = new LongAdder();
+    private final LongAccumulator maxHeight = new LongAccumulator(Math::max, 0L);
+    private final LongAdder[] comparisonHistogram = new LongAdder[HISTOGRAM_BUCKETS];
+
+    public TreeMetrics() {
+        for(int i = 0; i < HISTOGRAM_BUCKETS; ++i) {
+            comparisonHistogram[i] = new LongAdder();
+        }
+    }
+
+    //Records an insert that placed its value depth levels below the root
+    public void recordInsert(int depth) {
+        inserts.increment();
+        insertDepths.add(depth);
+        maxHeight.accumulate(depth + 1L);
+    }
+
+    //Records a search that compared the provided number of nodes
+    public void recordLookup(int compared) {
+        lookups.increment();
+        comparisons.add(compared);
+        comparisonHistogram[Math.min(compared, HISTOGRAM_BUCKETS - 1)].increment();
+    }
+
+    public void recordRotation() {
+        rotations.increment();
+    }
+
+    @Override
+    public long getInserts() {
+        return inserts.sum();
+    }
+
+    @Override
+    public long getLookups() {
+        return lookups.sum();
+    }
+
+    @Override
+    public long getRotations() {
+        return rotations.sum();
+    }
+
+    @Override
+    public long getMaxHeight() {
+        return maxHeight.get();
+    }
+
+    @Override
+    public double getAverageInsertDepth() {
+        long count = inserts.sum();
+        return count == 0 ? 0d : (double) insertDepths.sum() / count;
+    }
+
+    @Override
+    public double getAverageComparisons() {
+        long count = lookups.sum();
+        return count == 0 ? 0d : (double) comparisons.sum() / count;
+    }
+
+    @Override
+    public long[] getComparisonHistogram() {
+        long[] histogram = new long[HISTOGRAM_BUCKETS];
+
+        for(int i = 0; i < HISTOGRAM_BUCKETS; ++i) {
+            histogram[i] = comparisonHistogram[i].sum();
+        }
+
+        return histogram;
+    }
+
+    @Override
+    public void reset() {
+        inserts.reset();
+        insertDepths.reset();
+        lookups.reset();
+        comparisons.reset();
+        rotations.reset();
+        maxHeight.reset();
+
+        for(LongAdder bucket : comparisonHistogram) {
+            bucket.reset();
+        }
+    }
+
+    /**
+     * Registers these metrics with the platform MBean server, under the name
+     * "BinarySearchTree:type=TreeMetrics,name=" followed by the provided name.
+     * @param name tells this tree's metrics apart from those of other trees
+     * @return the name the MBean was registered under, for unregistering it
+     * @throws JMException if the name is malformed or already registered
+     */
+    public ObjectName registerMBean(String name) throws JMException {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName objectName = new ObjectName("BinarySearchTree:type=TreeMetrics,name=" + ObjectName.quote(name));
+        server.registerMBean(this, objectName);
+        return objectName;
+    }
+
+    public static void main(String[] args) throws JMException {
+        TreeMetrics metrics = new TreeMetrics();
+
+        System.out.println(metrics.test1() ? "Test 1 passed" : "Test 1 failed");
+        System.out.println(metrics.test2() ? "Test 2 passed" : "Test 2 failed");
+        System.out.println(metrics.test3() ? "Test 3 passed" : "Test 3 failed");
+    }
+
+    //A sorted chain in a plain tree shows up as deep inserts and long searches
+    public boolean test1() {
+        BinarySearchTree<Integer> intTree = new BinarySearchTree<>();
+        TreeMetrics metrics = intTree.enableMetrics();
+
+        for(int i = 0; i < 100; ++i) {
+            intTree.insert(i);
+        }
+
+        for(int i = 0; i < 100; ++i) {
+            intTree.contains(i);
+        }
+
+        long[] histogram = metrics.getComparisonHistogram();
+        long histogramTotal = 0;
+
+        for(long count : histogram) {
+            histogramTotal += count;
+        }
+
+        //Finding i compares i + 1 nodes, and the last bucket collects every search of 63 or more
+        boolean successful = metrics.getInserts() == 100 && metrics.getLookups() == 100 && histogramTotal == 100;
+        successful = successful && metrics.getMaxHeight() == 100 && metrics.getAverageInsertDepth() == 49.5d;
+        successful = successful && metrics.getAverageComparisons() == 50.5d && histogram[1] == 1 && histogram[63] == 38;
+        successful = successful && metrics.getRotations() == 0;
+
+        //Removes and counts find their nodes without being recorded as searches
+        intTree.count(5);
+        intTree.remove(99);
+        intTree.removeAll(98);
+        successful = successful && metrics.getLookups() == 100 && metrics.getAverageComparisons() == 50.5d;
+
+        //Once disabled, nothing is recorded any more
+        intTree.disableMetrics();
+        intTree.insert(100);
+        intTree.contains(100);
+
+        return successful && intTree.getMetrics() == null && metrics.getInserts() == 100 && metrics.getLookups() == 100;
+    }
+
+    //A red-black tree keeps its searches short, and its rotations are counted
+    public boolean test2() {
+        RedBlackTree<Integer> intTree = new RedBlackTree<>();
+        TreeMetrics metrics = intTree.enableMetrics();
+
+        for(int i = 0; i < 1000; ++i) {
+            intTree.insert(i);
+        }
+
+        for(int i = 0; i < 1000; ++i) {
+            intTree.contains(i);
+        }
+
+        //A red-black tree of 1000 values is at most 2 * log2(1001), about 20 levels high
+        boolean successful = metrics.getInserts() == 1000 && metrics.getRotations() > 0;
+        successful = successful && metrics.getMaxHeight() <= 20 && metrics.getAverageComparisons() < 20d;
+
+        metrics.reset();
+
+        return successful && metrics.getInserts() == 0 && metrics.getRotations() == 0 && metrics.getMaxHeight() == 0;
+    }
+
+    //The counters can be read over JMX
+    public boolean test3() throws JMException {
+        SplayTree<Integer> intTree = new SplayTree<>();
+        TreeMetrics metrics = intTree.enableMetrics();
+        ObjectName name = metrics.registerMBean("test3");
+
+        try {
+            for(int i = 0; i < 50; ++i) {
+                intTree.insert(i);
+                intTree.contains(i / 2);
+            }
+
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+
+            return (Long) server.getAttribute(name, "Inserts") == 50L && (Long) server.getAttribute(name, "Lookups") == 50L
+                && (Long) server.getAttribute(name, "Rotations") == metrics.getRotations() && metrics.getRotations() > 0;
+        } finally {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+        }
+    }
+}
@@ -0,0 +1,49 @@
+/**
+ * The JMX management interface of TreeMetrics. Every getter shows up as a
+ * read-only attribute, so the metrics of a live tree can be watched from
+ * jconsole or any other JMX client.
+ */
+public interface TreeMetricsMBean {
+
+    /**
+     * @return the number of values inserted one at a time
+     */
+    public long getInserts();
+
+    /**
+     * @return the number of searches for a value, by contains and remove
+     */
+    public long getLookups();
+
+    /**
+     * @return the number of rotations performed
+     */
+    public long getRotations();
+
+    /**
+     * @return the number of levels of the deepest insert so far, a high-water
+     * mark for the height of the tree
+     */
+    public long getMaxHeight();
+
+    /**
+     * @return the average depth at which inserted values were placed, the
+     * root being at depth 0
+     */
+    public double getAverageInsertDepth();
+
+    /**
+     * @return the average number of nodes compared per search
+     */
+    public double getAverageComparisons();
+
+    /**
+     * @return how many searches compared how many nodes: entry i counts the
+     * searches that compared i nodes, and the last entry also counts every
+     * longer search
+     */
+    public long[] getComparisonHistogram();
+
+    //Sets every counter back to zero
+    public void reset();
+}
@@ -0,0 +1,366 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.BitSet;
+
+/**
+ * Saves trees to files and loads them back without inserting the values one
+ * by one. A snapshot file holds:
+ *
+ *   a header: magic number, format version, flags and the number of values
+ *   the values in sorted order, each encoded by a KeyCodec
+ *   optionally, the shape of the tree: two bits per node in pre-order,
+ *     telling whether the node has a left and a right child
+ *
+ * Loading memory-maps the file and rebuilds the tree in O(n), either in a
+ * perfectly balanced shape through bulkLoad, or, when the file has a shape
+ * and the tree accepts it, in exactly the shape that was saved.
+ */
+public class TreeSnapshot {
+    //"BSTS" in ASCII
+    private static final int MAGIC = 0x42535453;
+    private static final int VERSION = 1;
+    private static final int FLAG_SHAPE = 1;
+    private static final int HEADER_BYTES = 4 * Integer.BYTES;
+    //Size of the buffer writes go through
+    private static final int WRITE_BUFFER_BYTES = 1 << 16;
+    //Files are mapped in windows of this size, since a single mapping can't exceed 2 GiB
+    private static final long MAP_WINDOW_BYTES = 1L << 30;
+    //A window is moved on when less than this is left in it, so a single encoded value can't be larger
+    protected static final int MAX_VALUE_BYTES = 1 << 20;
+
+    private TreeSnapshot() {
+    }
+
+    /**
+     * Writes the values of tree, in sorted order, to the file at path,
+     * replacing the file if it exists.
+     * @param tree the tree to save
+     * @param path the file to write
+     * @param codec converts each value to bytes
+     * @param withShape true to also save the shape of the tree, so that it
+     *        can be restored exactly; ignored for a tree in multiset mode,
+     *        whose nodes don't hold one value each
+     * @throws IOException if the file can't be written
+     * @throws IllegalArgumentException if a value encodes to more than
+     *         MAX_VALUE_BYTES bytes
+     */
+    public static <T extends Comparable<T>> void write(BinarySearchTree<T> tree, Path path, KeyCodec<T> codec, boolean withShape)
+            throws IOException, IllegalArgumentException {
+        withShape = withShape && !tree.isMultiset();
+
+        try(FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(Math.max(WRITE_BUFFER_BYTES, MAX_VALUE_BYTES));
+            buffer.putInt(MAGIC).putInt(VERSION).putInt(withShape ? FLAG_SHAPE : 0).putInt(tree.size());
+
+            for(T value : tree) {
+                int size = codec.encodedSize(value);
+
+                if(size > MAX_VALUE_BYTES) {
+                    throw new IllegalArgumentException("value encodes to " + size + " bytes, more than " + MAX_VALUE_BYTES);
+                }
+
+                if(buffer.remaining() < size) {
+                    flush(buffer, channel);
+                }
+
+                codec.write(value, buffer);
+            }
+
+            if(withShape) {
+                //Pre-order walk following the parent references, so no stack is needed
+                BitSet shape = new BitSet(2 * tree.size());
+                int bit = 0;
+
+                for(BinaryNode<T> node = tree.root; node != null; node = BinaryNode.nextPreOrder(node, null)) {
+                    shape.set(bit++, node.getLeft() != null);
+                    shape.set(bit++, node.getRight() != null);
+                }
+
+                byte[] bytes = shape.toByteArray();
+                int shapeBytes = (bit + 7) / 8;
+
+                for(int i = 0; i < shapeBytes; ++i) {
+                    if(!buffer.hasRemaining()) {
+                        flush(buffer, channel);
+                    }
+
+                    //toByteArray leaves out trailing zero bytes
+                    buffer.put(i < bytes.length ? bytes[i] : 0);
+                }
+            }
+
+            flush(buffer, channel);
+        }
+    }
+
+    /**
+     * Replaces the contents of into with the values saved in the file at path.
+     * The file is memory-mapped and the values are decoded straight into an
+     * array, from which the tree is built in O(n). When the file has a shape,
+     * it is passed to into.restoreShape, which rebuilds it exactly (trees that
+     * keep their own balance rebuild a balanced shape instead); otherwise the
+     * tree is bulk loaded in a perfectly balanced shape.
+     * @param path the file to read
+     * @param codec converts bytes back to values
+     * @param into the tree to load the values into
+     * @throws IOException if the file can't be read, is not a snapshot, or is
+     *         corrupt: cut short, with a number of values that is negative
+     *         or too large for the file, with a value the codec can't read,
+     *         with values out of the order of into, or with a shape that doesn't
+     *         match its values
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public static <T extends Comparable<T>> void load(Path path, KeyCodec<T> codec, BinarySearchTree<T> into) throws IOException {
+        try(FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long fileSize = channel.size();
+            long windowStart = 0;
+            MappedByteBuffer window = map(channel, windowStart, fileSize);
+
+            if(fileSize < HEADER_BYTES || window.getInt() != MAGIC) {
+                throw new IOException(path + " is not a tree snapshot");
+            }
+
+            if(window.getInt() != VERSION) {
+                throw new IOException(path + " has an unsupported snapshot version");
+            }
+
+            int flags = window.getInt();
+            int count = window.getInt();
+
+            if(count < 0) {
+                throw new IOException(path + " has a negative number of values");
+            }
+
+            //Checked before the array is allocated, so a corrupt count can't ask for more memory than the file could fill
+            if(count > (fileSize - HEADER_BYTES) / Math.max(1, codec.minEncodedSize())) {
+                throw new IOException(path + " claims " + count + " values, more than it can hold");
+            }
+
+            T[] values = (T[]) new Comparable[count];
+
+            for(int i = 0; i < count; ++i) {
+                //Move the window on before it could end in the middle of a value
+                if(window.remaining() < MAX_VALUE_BYTES && windowStart + window.limit() < fileSize) {
+                    windowStart += window.position();
+                    window = map(channel, windowStart, fileSize);
+                }
+
+                try {
+                    values[i] = codec.read(window);
+                } catch(IllegalArgumentException e) {
+                    throw new IOException(path + " has a corrupt value at index " + i, e);
+                }
+
+                if(i > 0 && into.compare(values[i], values[i - 1]) < 0) {
+                    throw new IOException(path + " has values out of sorted order");
+                }
+            }
+
+            if((flags & FLAG_SHAPE) == 0) {
+                into.bulkLoad(values);
+                return;
+            }
+
+            byte[] shapeBytes = new byte[(2 * count + 7) / 8];
+
+            for(int copied = 0; copied < shapeBytes.length;) {
+                if(!window.hasRemaining()) {
+                    windowStart += window.position();
+                    window = map(channel, windowStart, fileSize);
+                }
+
+                int chunk = Math.min(window.remaining(), shapeBytes.length - copied);
+                window.get(shapeBytes, copied, chunk);
+                copied += chunk;
+            }
+
+            try {
+                into.restoreShape(values, BitSet.valueOf(shapeBytes));
+            } catch(IllegalArgumentException e) {
+                throw new IOException(path + " has a shape that doesn't match its values", e);
+            }
+        } catch(java.nio.BufferUnderflowException e) {
+            throw new IOException(path + " is truncated", e);
+        }
+    }
+
+    //Writes out everything in the buffer and empties it
+    private static void flush(ByteBuffer buffer, FileChannel channel) throws IOException {
+        buffer.flip();
+
+        while(buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+
+        buffer.clear();
+    }
+
+    //Maps the part of the file from start on, at most MAP_WINDOW_BYTES long
+    private static MappedByteBuffer map(FileChannel channel, long start, long fileSize) throws IOException {
+        return channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(MAP_WINDOW_BYTES, fileSize - start));
+    }
+
+    public static void main(String[] args) throws IOException {
+        System.out.println(test1() ? "Test 1 passed" : "Test 1 failed");
+        System.out.println(test2() ? "Test 2 passed" : "Test 2 failed");
+        System.out.println(test3() ? "Test 3 passed" : "Test 3 failed");
+    }
+
+    //Saves random trees with their shape and restores them exactly
+    public static boolean test1() throws IOException {
+        Path file = File.createTempFile("snapshot", ".bsts").toPath();
+        boolean successful = true;
+
+        try {
+            for(int n = 0; n < 300; n += 7) {
+                BinarySearchTree<Integer> intTree = new BinarySearchTree<>();
+
+                for(int i = 0; i < n; ++i) {
+                    intTree.insert((int) (Math.random() * 100d) - 50);
+                }
+
+                TreeSnapshot.write(intTree, file, KeyCodec.INTEGER, true);
+                BinarySearchTree<Integer> loaded = new BinarySearchTree<>();
+                TreeSnapshot.load(file, KeyCodec.INTEGER, loaded);
+
+                successful = successful && loaded.size() == n && loaded.hasConsistentSizes();
+                successful = successful && (n == 0 || loaded.root.toLevelOrderString().equals(intTree.root.toLevelOrderString()));
+            }
+        } finally {
+            Files.deleteIfExists(file);
+        }
+
+        return successful;
+    }
+
+    //Saves a chain of strings without its shape, and loads it back balanced into a plain tree and a red-black tree
+    public static boolean test2() throws IOException {
+        Path file = File.createTempFile("snapshot", ".bsts").toPath();
+
+        try {
+            BinarySearchTree<String> stringTree = new BinarySearchTree<>();
+
+            for(int i = 0; i < 5000; ++i) {
+                stringTree.insert(String.format("key-%05d-\u00e9", i));
+            }
+
+            TreeSnapshot.write(stringTree, file, KeyCodec.STRING, false);
+            BinarySearchTree<String> loaded = new BinarySearchTree<>();
+            TreeSnapshot.load(file, KeyCodec.STRING, loaded);
+
+            boolean successful = loaded.size() == 5000 && loaded.heightHelper(loaded.root) == 13;
+            successful = successful && loaded.first().equals(stringTree.first()) && loaded.select(2500).equals(stringTree.select(2500));
+
+            //A red-black tree can't take the saved chain shape, it is loaded balanced even when the shape is in the file
+            TreeSnapshot.write(stringTree, file, KeyCodec.STRING, true);
+            RedBlackTree<String> redBlackTree = new RedBlackTree<>();
+            TreeSnapshot.load(file, KeyCodec.STRING, redBlackTree);
+
+            return successful && redBlackTree.size() == 5000 && redBlackTree.isValidRedBlackTree();
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    //Files that are not snapshots, or are cut short, are rejected
+    public static boolean test3() throws IOException {
+        Path file = File.createTempFile("snapshot", ".bsts").toPath();
+        boolean successful = true;
+
+        try {
+            Files.write(file, new byte[] {1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16});
+
+            try {
+                TreeSnapshot.load(file, KeyCodec.LONG, new BinarySearchTree<>());
+                successful = false;
+            } catch(IOException e) {
+                //expected, the magic number is wrong
+            }
+
+            BinarySearchTree<Long> longTree = new BinarySearchTree<>();
+
+            for(long i = 0; i < 100; ++i) {
+                longTree.insert(i * 1000000000000L);
+            }
+
+            TreeSnapshot.write(longTree, file, KeyCodec.LONG, false);
+            byte[] bytes = Files.readAllBytes(file);
+            Files.write(file, java.util.Arrays.copyOf(bytes, bytes.length - 3));
+
+            try {
+                TreeSnapshot.load(file, KeyCodec.LONG, new BinarySearchTree<>());
+                successful = false;
+            } catch(IOException e) {
+                //expected, the last value is incomplete
+            }
+
+            //Headers with a negative number of values, and with more values than the file can hold
+            for(int count : new int[] {-1, Integer.MAX_VALUE, 3}) {
+                Files.write(file, ByteBuffer.allocate(HEADER_BYTES + 2 * Long.BYTES).putInt(MAGIC).putInt(VERSION).putInt(0).putInt(count)
+                    .putLong(3L).putLong(5L).array());
+
+                try {
+                    TreeSnapshot.load(file, KeyCodec.LONG, new BinarySearchTree<>());
+                    successful = false;
+                } catch(IOException e) {
+                    //expected, the count is corrupt
+                }
+            }
+
+            //Strings with a negative length, and with a length longer than the rest of the file
+            for(int length : new int[] {-1, Integer.MAX_VALUE}) {
+                Files.write(file, ByteBuffer.allocate(HEADER_BYTES + Integer.BYTES + 4).putInt(MAGIC).putInt(VERSION).putInt(0).putInt(1)
+                    .putInt(length).put(new byte[] {'a', 'b', 'c', 'd'}).array());
+
+                try {
+                    TreeSnapshot.load(file, KeyCodec.STRING, new BinarySearchTree<>());
+                    successful = false;
+                } catch(IOException e) {
+                    //expected, the length is corrupt
+                }
+            }
+
+            //Values out of order, with and without a shape, which would otherwise load into a tree searches can't find them in
+            for(int flags : new int[] {0, FLAG_SHAPE}) {
+                Files.write(file, ByteBuffer.allocate(HEADER_BYTES + 2 * Long.BYTES + 1).putInt(MAGIC).putInt(VERSION).putInt(flags).putInt(2)
+                    .putLong(5L).putLong(3L).put((byte) 0b0010).array());
+
+                try {
+                    TreeSnapshot.load(file, KeyCodec.LONG, new BinarySearchTree<>());
+                    successful = false;
+                } catch(IOException e) {
+                    //expected, 3 comes after 5
+                }
+            }
+
+            //Sorted values whose shape has too many nodes
+            Files.write(file, ByteBuffer.allocate(HEADER_BYTES + 2 * Long.BYTES + 1).putInt(MAGIC).putInt(VERSION).putInt(FLAG_SHAPE).putInt(2)
+                .putLong(3L).putLong(5L).put((byte) 0b1111).array());
+
+            try {
+                TreeSnapshot.load(file, KeyCodec.LONG, new BinarySearchTree<>());
+                successful = false;
+            } catch(IOException e) {
+                //expected, the shape doesn't fit two values
+            }
+
+            //Restoring a shape directly rejects values out of order as well
+            try {
+                new BinarySearchTree<Long>().restoreShape(new Long[] {5L, 3L}, BitSet.valueOf(new byte[] {0b0010}));
+                successful = false;
+            } catch(IllegalArgumentException e) {
+                //expected, 3 comes after 5
+            }
+        } finally {
+            Files.deleteIfExists(file);
+        }
+
+        return successful;
+    }
+}
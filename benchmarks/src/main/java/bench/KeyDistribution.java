@@ -0,0 +1,76 @@
+package bench;
+
+import java.util.SplittableRandom;
+
+/**
+ * The key distributions the tree benchmarks insert and look up. Keys are
+ * always ints in [0, n), so every distribution can be used for trees of any
+ * size without building lookup tables as large as the tree.
+ */
+public enum KeyDistribution {
+    // ascending keys, the worst case for an unbalanced tree
+    SORTED,
+    // descending keys, the mirror image of SORTED
+    REVERSE,
+    // uniformly random keys
+    RANDOM,
+    // a few hot keys take most of the accesses, scattered over the key space
+    ZIPFIAN;
+
+    //A prime larger than any tree size, so multiplying by it modulo n scatters ranks over [0, n) without collisions
+    private static final long SCATTER = 1_000_000_007L;
+
+    /**
+     * @return the keys to build a tree of n keys from, in insertion order
+     */
+    public int[] insertionOrder(int n, long seed) {
+        int[] keys = new int[n];
+        SplittableRandom random = new SplittableRandom(seed);
+
+        for(int i = 0; i < n; ++i) {
+            keys[i] = switch(this) {
+                case SORTED -> i;
+                case REVERSE -> n - 1 - i;
+                case RANDOM -> i;
+                case ZIPFIAN -> zipfian(random, n);
+            };
+        }
+
+        //RANDOM inserts every key once, in a shuffled order
+        if(this == RANDOM) {
+            for(int i = n - 1; i > 0; --i) {
+                int j = random.nextInt(i + 1);
+                int temp = keys[i];
+                keys[i] = keys[j];
+                keys[j] = temp;
+            }
+        }
+
+        return keys;
+    }
+
+    /**
+     * @return count keys to look up in a tree of the keys [0, n)
+     */
+    public int[] lookups(int n, int count, long seed) {
+        int[] keys = new int[count];
+        SplittableRandom random = new SplittableRandom(seed);
+
+        for(int i = 0; i < count; ++i) {
+            keys[i] = switch(this) {
+                case SORTED -> (int) ((long) i * n / count);
+                case REVERSE -> (int) ((long) (count - 1 - i) * n / count);
+                case RANDOM -> random.nextInt(n);
+                case ZIPFIAN -> zipfian(random, n);
+            };
+        }
+
+        return keys;
+    }
+
+    //Draws a popularity rank with P(rank <= r) = ln(r + 1) / ln(n + 1), the continuous Zipf law with exponent 1, and scatters it to a key
+    private static int zipfian(SplittableRandom random, int n) {
+        long rank = Math.min(n - 1, (long) Math.exp(random.nextDouble() * Math.log(n + 1d)) - 1);
+        return (int) (rank * SCATTER % n);
+    }
+}
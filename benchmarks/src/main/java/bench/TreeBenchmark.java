@@ -0,0 +1,152 @@
+package bench;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Benchmarks the core operations of the trees: building a tree by repeated
+ * insert, contains (on the tree and on a frozen copy of it), size, a rotation
+ * and its inverse, and the in-order and level-order traversals (built as a
+ * string, and streamed).
+ *
+ * The default sizes keep a full run practical. Larger trees are selected on
+ * the command line, e.g. -p size=1000000,100000000, and need a heap of roughly
+ * 60 bytes per key. BSTRotation with SORTED or REVERSE keys builds a chain, so
+ * its setup is quadratic; keep it to sizes up to about 100000.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class TreeBenchmark {
+    //Number of precomputed lookup keys, cycled through by contains
+    private static final int LOOKUPS = 1 << 16;
+
+    @Param({"1000", "100000"})
+    public int size;
+
+    @Param({"RANDOM", "SORTED", "REVERSE", "ZIPFIAN"})
+    public KeyDistribution distribution;
+
+    @Param({"RedBlackTree", "AVLTree", "BSTRotation", "SplayTree"})
+    public String tree;
+
+    //The keys, boxed once up front so boxing is never measured
+    private Integer[] insertionOrder;
+    private Integer[] lookups;
+    private int nextLookup;
+    private BSTRotation<Integer> built;
+    private FrozenTree<Integer> frozen;
+
+    @Setup
+    public void setUp() {
+        int[] keys = distribution.insertionOrder(size, 42L);
+        insertionOrder = new Integer[size];
+
+        for(int i = 0; i < size; ++i) {
+            insertionOrder[i] = keys[i];
+        }
+
+        int[] queries = distribution.lookups(size, LOOKUPS, 43L);
+        lookups = new Integer[LOOKUPS];
+
+        for(int i = 0; i < LOOKUPS; ++i) {
+            lookups[i] = queries[i];
+        }
+
+        built = build();
+        frozen = built.freeze();
+        nextLookup = 0;
+    }
+
+    //Creates an empty tree of the selected kind
+    private BSTRotation<Integer> newTree() {
+        return switch(tree) {
+            case "RedBlackTree" -> new RedBlackTree<>();
+            case "AVLTree" -> new AVLTree<>();
+            case "SplayTree" -> new SplayTree<>();
+            case "BSTRotation" -> new BSTRotation<>();
+            default -> throw new IllegalArgumentException("Unknown tree: " + tree);
+        };
+    }
+
+    //Inserts all size keys into a new tree; one operation of this benchmark is a whole tree
+    @Benchmark
+    public BSTRotation<Integer> build() {
+        BSTRotation<Integer> newTree = newTree();
+
+        for(Integer key : insertionOrder) {
+            newTree.insert(key);
+        }
+
+        return newTree;
+    }
+
+    @Benchmark
+    public boolean contains() {
+        Integer key = lookups[nextLookup];
+        nextLookup = (nextLookup + 1) & (LOOKUPS - 1);
+        return built.contains(key);
+    }
+
+    //The same lookups as contains, on the array-packed copy of the tree
+    @Benchmark
+    public boolean frozenContains() {
+        Integer key = lookups[nextLookup];
+        nextLookup = (nextLookup + 1) & (LOOKUPS - 1);
+        return frozen.contains(key);
+    }
+
+    @Benchmark
+    public int size() {
+        return built.size();
+    }
+
+    //Rotates a child of the root above it and straight back, which leaves the tree as it was
+    @Benchmark
+    public BinaryNode<Integer> rotate() {
+        BinaryNode<Integer> oldRoot = built.root;
+        BinaryNode<Integer> child = oldRoot.getLeft() != null ? oldRoot.getLeft() : oldRoot.getRight();
+
+        built.rotate(child, oldRoot);
+        built.rotate(oldRoot, child);
+
+        return built.root;
+    }
+
+    //Visits every value in-order; one operation is a whole traversal
+    @Benchmark
+    public void inOrderTraversal(Blackhole blackhole) {
+        for(Integer value : built) {
+            blackhole.consume(value);
+        }
+    }
+
+    //Renders every value in level-order; one operation is a whole traversal
+    @Benchmark
+    public String levelOrderTraversal() {
+        return built.root.toLevelOrderString();
+    }
+
+    //Streams every value in level-order to a writer that discards it, which keeps only the queue and one chunk in memory
+    @Benchmark
+    public void levelOrderStreaming() throws IOException {
+        built.root.appendLevelOrder(Writer.nullWriter());
+    }
+}